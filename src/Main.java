@@ -11,6 +11,7 @@ public class Main {
     private static final UserOperation userOperation = UserOperation.getInstance();
     private static final ProductOperation productOperation = ProductOperation.getInstance();
     private static final OrderOperation orderOperation = OrderOperation.getInstance();
+    private static final CustomerOperation customerOperation = CustomerOperation.getInstance();
     private static User currentUser = null;
 
     public static void main(String[] args) {
@@ -392,7 +393,7 @@ public class Main {
 
     private static void generateStatistics() {
         io.printMessage("Generating statistical figures...");
-        orderOperation.generateAllTop10BestSellersFigure();
+        orderOperation.generateAllStatisticsFigures();
         io.printMessage("Statistical figures generated successfully!");
     }
 
@@ -417,9 +418,12 @@ public class Main {
         if (currentUser instanceof Customer) {
             String[] input = io.getUserInput("Enter new name and email: ", 2);
             Customer customer = (Customer) currentUser;
-            customer.setName(input[0]);
-            customer.setEmail(input[1]);
-            io.printMessage("Profile updated successfully!");
+            // Both fields are validated before either is changed, then saved and indexed together
+            if (customerOperation.updateProfile(customer, input[0], input[1])) {
+                io.printMessage("Profile updated successfully!");
+            } else {
+                io.printErrorMessage("Profile", "Invalid or already taken username, or invalid email.");
+            }
         }
     }
 
@@ -440,7 +444,7 @@ public class Main {
                 product.getPrice(), product.getCategory()));
         }
 
-        List<String> selectedProductIds = new ArrayList<>();
+        List<Product> selectedProducts = new ArrayList<>();
         double totalAmount = 0.0;
 
         while (true) {
@@ -452,7 +456,7 @@ public class Main {
                 return;
             }
             if (productId.equalsIgnoreCase("done")) {
-                if (selectedProductIds.isEmpty()) {
+                if (selectedProducts.isEmpty()) {
                     io.printErrorMessage("Order", "Please add at least one product to the order.");
                     continue;
                 }
@@ -467,16 +471,15 @@ public class Main {
             }
 
             // Add product to order
-            selectedProductIds.add(productId);
+            selectedProducts.add(product);
             totalAmount += product.getPrice();
 
             // Show current order summary
             io.printMessage("\nCurrent Order Summary:");
-            io.printMessage(String.format("Total Items: %d", selectedProductIds.size()));
+            io.printMessage(String.format("Total Items: %d", selectedProducts.size()));
             io.printMessage(String.format("Total Amount: $%.2f", totalAmount));
             io.printMessage("\nSelected Products:");
-            for (String pid : selectedProductIds) {
-                Product p = productOperation.getProductById(pid);
+            for (Product p : selectedProducts) {
                 io.printMessage(String.format("- %s: %s ($%.2f)", 
                     p.getId(), p.getName(), p.getPrice()));
             }
@@ -484,11 +487,10 @@ public class Main {
 
         // Show final order summary and confirm
         io.printMessage("\nFinal Order Summary:");
-        io.printMessage(String.format("Total Items: %d", selectedProductIds.size()));
+        io.printMessage(String.format("Total Items: %d", selectedProducts.size()));
         io.printMessage(String.format("Total Amount: $%.2f", totalAmount));
         io.printMessage("\nSelected Products:");
-        for (String pid : selectedProductIds) {
-            Product p = productOperation.getProductById(pid);
+        for (Product p : selectedProducts) {
             io.printMessage(String.format("- %s: %s ($%.2f)", 
                 p.getId(), p.getName(), p.getPrice()));
         }
@@ -499,19 +501,15 @@ public class Main {
             return;
         }
 
-        // Create orders for each product
-        boolean allSuccessful = true;
-        for (String productId : selectedProductIds) {
-            if (!orderOperation.createOrder(currentUser.getId(), productId)) {
-                io.printErrorMessage("Order", "Failed to place order for product: " + productId);
-                allSuccessful = false;
-            }
+        // Create one order per product in a single commit
+        List<String> selectedProductIds = new ArrayList<>();
+        for (Product p : selectedProducts) {
+            selectedProductIds.add(p.getId());
         }
-
-        if (allSuccessful) {
+        if (orderOperation.createOrders(currentUser.getId(), selectedProductIds)) {
             io.printMessage("All orders placed successfully!");
         } else {
-            io.printMessage("Some orders may have failed. Please check your order history.");
+            io.printErrorMessage("Order", "Failed to place the order. No items were ordered, please try again.");
         }
     }
 
@@ -519,7 +517,7 @@ public class Main {
         if (currentUser instanceof Customer) {
             int page = 1;
             while (true) {
-                OrderListResult result = orderOperation.getOrderList(currentUser.getId(), page);
+                OrderListResult result = orderOperation.getOrderHistory(currentUser.getId(), page);
                 io.showList("customer", "order", result.getOrders(), page, result.getTotalPages());
                 
                 String[] input = io.getUserInput("Enter page number (0 to return): ", 1);
@@ -541,7 +539,7 @@ public class Main {
     private static void generateConsumptionFigures() {
         if (currentUser instanceof Customer) {
             io.printMessage("Generating consumption figures...");
-            // Implementation for generating customer-specific consumption figures
+            orderOperation.generateSingleCustomerConsumptionFigure(currentUser.getId());
             io.printMessage("Consumption figures generated successfully!");
         }
     }
@@ -569,10 +567,12 @@ public class Main {
         }
 
         // Show available categories
-        List<String> categories = productOperation.getCategories();
+        Map<String, Integer> categoryCounts = productOperation.getCategoryCounts();
+        List<String> categories = new ArrayList<>(categoryCounts.keySet());
         io.printMessage("\nAvailable categories:");
         for (int i = 0; i < categories.size(); i++) {
-            io.printMessage((i + 1) + ". " + categories.get(i));
+            io.printMessage(String.format("%d. %s (%d products)",
+                i + 1, categories.get(i), categoryCounts.get(categories.get(i))));
         }
         io.printMessage((categories.size() + 1) + ". Enter new category");
 
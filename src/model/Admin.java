@@ -3,7 +3,7 @@ package model;
 public class Admin extends User {
     /**
      * Constructs an admin object.
-     * @param id Must be unique, format: u_10 digits, such as u_1234567890
+     * @param id Must be unique, format: u_ followed by a generated number, such as u_387402713845760001
      * @param name The user's name
      * @param password The user's password
      */
@@ -13,7 +13,7 @@ public class Order implements Serializable {
 
     /**
      * Constructs an order object.
-     * @param orderId Must be a unique string, format is o_5 digits such as o_12345
+     * @param orderId Must be a unique string, format is o_ followed by a generated number such as o_387402713845760001
      * @param customerId ID of the user who placed the order
      * @param productId ID of the product ordered
      * @param price Price of the product
@@ -58,6 +58,10 @@ public class Order implements Serializable {
         return createTime.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
     }
 
+    public LocalDateTime getCreateDateTime() {
+        return createTime;
+    }
+
     public void setOrderId(String orderId) {
         this.orderId = orderId;
     }
@@ -10,7 +10,7 @@ public class Product implements Serializable {
 
     /**
      * Constructs a product object.
-     * @param id Product ID (must be unique)
+     * @param id Must be unique, format: p_ followed by a generated number, such as p_387402713845760001
      * @param name Product name
      * @param price Current price of the product
      * @param category Product category
@@ -35,7 +35,7 @@ public class AdminOperation {
         }
 
         // Create new admin
-        Admin admin = new Admin("admin", username, password);
+        Admin admin = new Admin(userOperation.generateUserId(), username, password);
         userOperation.addUser(admin);
         return true;
     }
@@ -0,0 +1,42 @@
+package operation;
+
+public class ApproximateCount {
+    private String key;
+    private long estimate;
+    private long errorBound;
+    private double confidence;
+
+    /**
+     * @param key What was counted, such as a product ID
+     * @param estimate The estimated count
+     * @param errorBound How far the true count may be from the estimate
+     * @param confidence Probability that the true count is within the bound
+     */
+    public ApproximateCount(String key, long estimate, long errorBound, double confidence) {
+        this.key = key;
+        this.estimate = estimate;
+        this.errorBound = errorBound;
+        this.confidence = confidence;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getEstimate() {
+        return estimate;
+    }
+
+    public long getErrorBound() {
+        return errorBound;
+    }
+
+    public double getConfidence() {
+        return confidence;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d (+/- %d, %.0f%% confidence)", key, estimate, errorBound, confidence * 100);
+    }
+}
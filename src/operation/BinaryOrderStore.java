@@ -0,0 +1,364 @@
+package operation;
+
+import model.Order;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+/**
+ * Order store kept in a memory-mapped file of fixed-width binary records.
+ * Records are read in place, so opening the store costs the same whatever
+ * the order history size, and Order objects are only built for the records
+ * that are actually requested. Mutations are written straight into the
+ * mapping and forced to disk before they return.
+ *
+ * A delete does not move any record: the record's order ID is cleared and
+ * the header counts it as deleted. Deleted records are dropped by copying
+ * the live ones to a new file that replaces the old one, once enough have
+ * accumulated, when the store is closed, and when it is opened after a
+ * deleted record was left behind. Until then list positions skip them.
+ *
+ * File layout: a 16 byte header (magic, version, deleted record count,
+ * record count) followed by records of RECORD_SIZE bytes holding the order
+ * ID, customer ID and product ID as zero-padded ASCII, the price as a double
+ * and the create time as epoch seconds. Version 1 files kept the record
+ * count in a long over both counts, so they read the same way.
+ */
+public class BinaryOrderStore extends AbstractList<Order>
+        implements RandomAccess, AutoCloseable, OrderAggregator.OrderSource {
+    private static final int MAGIC = 0x4F524442; // "ORDB"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+    private static final int DELETED_OFFSET = 8;
+    private static final int COUNT_OFFSET = 12;
+    static final int ID_WIDTH = 24;
+    private static final int ORDER_ID_OFFSET = 0;
+    private static final int CUSTOMER_ID_OFFSET = ORDER_ID_OFFSET + ID_WIDTH;
+    private static final int PRODUCT_ID_OFFSET = CUSTOMER_ID_OFFSET + ID_WIDTH;
+    private static final int PRICE_OFFSET = PRODUCT_ID_OFFSET + ID_WIDTH;
+    private static final int TIME_OFFSET = PRICE_OFFSET + 8;
+    static final int RECORD_SIZE = TIME_OFFSET + 8;
+    private static final int INITIAL_CAPACITY = 1024;
+    // Deleted records kept before the live ones are copied to a new file
+    private static final int MAX_DELETED_RECORDS = 4096;
+
+    private final Path path;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    // Records in the file, deleted ones included
+    private int records;
+    // Sorted record numbers of the deleted records
+    private int[] deleted = new int[16];
+    private int deletedCount;
+
+    private BinaryOrderStore(Path path) throws IOException {
+        this.path = path;
+        openChannel();
+        try {
+            init();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void init() throws IOException {
+        if (channel.size() < HEADER_SIZE) {
+            map(INITIAL_CAPACITY);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(DELETED_OFFSET, 0);
+            buffer.putInt(COUNT_OFFSET, 0);
+        } else {
+            map((int) ((channel.size() - HEADER_SIZE) / RECORD_SIZE));
+            int version = buffer.getInt(4);
+            if (buffer.getInt(0) != MAGIC || (version != 1 && version != VERSION)) {
+                throw new IOException("Not a binary order store");
+            }
+            buffer.putInt(4, VERSION);
+            records = buffer.getInt(COUNT_OFFSET);
+            if (buffer.getInt(DELETED_OFFSET) > 0) {
+                // Closed without compacting; the deleted records are the ones without an order ID
+                for (int i = 0; i < records; i++) {
+                    if (buffer.get(HEADER_SIZE + i * RECORD_SIZE + ORDER_ID_OFFSET) == 0) {
+                        markDeleted(i);
+                    }
+                }
+                compact();
+            }
+        }
+    }
+
+    /**
+     * Opens a binary store, creating an empty one if the file does not exist.
+     * @param path Path of the binary order file
+     * @return The opened store
+     * @throws IOException if the file cannot be opened or is not a binary order store
+     */
+    public static BinaryOrderStore open(String path) throws IOException {
+        return new BinaryOrderStore(Paths.get(path));
+    }
+
+    /**
+     * Writes orders to a new binary store, replacing any existing file at the path.
+     * @param orders The orders to write
+     * @param binaryPath Path of the binary file to write
+     * @return Number of orders written
+     * @throws IOException if the binary file cannot be written
+     */
+    static int write(List<Order> orders, String binaryPath) throws IOException {
+        Path tempPath = Paths.get(binaryPath + ".tmp");
+        Files.deleteIfExists(tempPath);
+        try (BinaryOrderStore store = open(tempPath.toString())) {
+            store.addAll(orders);
+        }
+        Files.move(tempPath, Paths.get(binaryPath), StandardCopyOption.REPLACE_EXISTING);
+        return orders.size();
+    }
+
+    @Override
+    public int size() {
+        return records - deletedCount;
+    }
+
+    @Override
+    public Order get(int index) {
+        int offset = recordOffset(index);
+        Order order = new Order(
+            readId(offset + ORDER_ID_OFFSET),
+            readId(offset + CUSTOMER_ID_OFFSET),
+            readId(offset + PRODUCT_ID_OFFSET),
+            buffer.getDouble(offset + PRICE_OFFSET));
+        order.setCreateTime(LocalDateTime.ofEpochSecond(
+            buffer.getLong(offset + TIME_OFFSET), 0, ZoneOffset.UTC));
+        return order;
+    }
+
+    public String getOrderId(int index) {
+        return readId(recordOffset(index) + ORDER_ID_OFFSET);
+    }
+
+    public String getCustomerId(int index) {
+        return readId(recordOffset(index) + CUSTOMER_ID_OFFSET);
+    }
+
+    public String getProductId(int index) {
+        return readId(recordOffset(index) + PRODUCT_ID_OFFSET);
+    }
+
+    public double getPrice(int index) {
+        return buffer.getDouble(recordOffset(index) + PRICE_OFFSET);
+    }
+
+    public LocalDateTime getCreateTime(int index) {
+        return LocalDateTime.ofEpochSecond(buffer.getLong(recordOffset(index) + TIME_OFFSET), 0, ZoneOffset.UTC);
+    }
+
+    @Override
+    public boolean add(Order order) {
+        return addAll(Collections.singletonList(order));
+    }
+
+    /**
+     * Appends several orders as one unit. Every record is forced to disk
+     * before the header count is raised, so if the process stops part way
+     * none of them is visible when the file is opened again.
+     */
+    @Override
+    public boolean addAll(Collection<? extends Order> orders) {
+        if (orders.isEmpty()) {
+            return false;
+        }
+        ensureCapacity(records + orders.size());
+        int first = HEADER_SIZE + records * RECORD_SIZE;
+        int offset = first;
+        for (Order order : orders) {
+            writeRecord(offset, order);
+            offset += RECORD_SIZE;
+        }
+        buffer.force(first, offset - first);
+        records += orders.size();
+        buffer.putInt(COUNT_OFFSET, records);
+        buffer.force(0, HEADER_SIZE);
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Deletes an order by clearing its order ID. The header counts the
+     * deleted record before the ID is cleared, so a store opened after a
+     * crash in between only looks for deleted records it does not find.
+     */
+    @Override
+    public Order remove(int index) {
+        Order removed = get(index);
+        int record = recordNumber(index);
+        buffer.putInt(DELETED_OFFSET, deletedCount + 1);
+        buffer.force(0, HEADER_SIZE);
+        int offset = HEADER_SIZE + record * RECORD_SIZE + ORDER_ID_OFFSET;
+        buffer.put(offset, (byte) 0);
+        buffer.force(offset, 1);
+        markDeleted(record);
+        modCount++;
+        if (deletedCount >= MAX_DELETED_RECORDS) {
+            try {
+                compact();
+            } catch (IOException e) {
+                // The deleted records stay skipped until the next compaction
+                e.printStackTrace();
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        records = 0;
+        deletedCount = 0;
+        buffer.putInt(DELETED_OFFSET, 0);
+        buffer.putInt(COUNT_OFFSET, 0);
+        buffer.force(0, HEADER_SIZE);
+        modCount++;
+    }
+
+    /**
+     * Forces the mapped records to the storage device.
+     */
+    public void force() {
+        buffer.force();
+    }
+
+    /**
+     * Drops the deleted records, forces pending changes to disk and closes the file.
+     */
+    public void close() {
+        try {
+            if (deletedCount > 0) {
+                compact();
+            }
+            force();
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Copies the live records to a new file, forces it and moves it over the store
+    private void compact() throws IOException {
+        Path tempPath = Paths.get(path + ".compact");
+        int live = records - deletedCount;
+        try (FileChannel out = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(0).putInt(live).flip();
+            out.write(header);
+            int next = 0;
+            for (int i = 0; i < records; i++) {
+                if (next < deletedCount && deleted[next] == i) {
+                    next++;
+                    continue;
+                }
+                ByteBuffer record = buffer.slice(HEADER_SIZE + i * RECORD_SIZE, RECORD_SIZE);
+                while (record.hasRemaining()) {
+                    out.write(record);
+                }
+            }
+            out.force(true);
+        }
+        channel.close();
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        openChannel();
+        records = live;
+        deletedCount = 0;
+        map(live);
+    }
+
+    private void openChannel() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= capacity) {
+            return;
+        }
+        try {
+            map(Math.max(needed, Math.max(capacity * 2, INITIAL_CAPACITY)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void map(int slots) throws IOException {
+        capacity = slots;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) slots * RECORD_SIZE);
+    }
+
+    private void markDeleted(int record) {
+        if (deletedCount == deleted.length) {
+            deleted = Arrays.copyOf(deleted, deletedCount * 2);
+        }
+        int position = -Arrays.binarySearch(deleted, 0, deletedCount, record) - 1;
+        System.arraycopy(deleted, position, deleted, position + 1, deletedCount - position);
+        deleted[position] = record;
+        deletedCount++;
+    }
+
+    // Record number of the order at a list position: the position plus the deleted records before it.
+    // deleted[j] - j live records come before deleted[j], which never decreases with j
+    private int recordNumber(int index) {
+        int low = 0;
+        int high = deletedCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (deleted[middle] - middle <= index) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return index + low;
+    }
+
+    private int recordOffset(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        return HEADER_SIZE + recordNumber(index) * RECORD_SIZE;
+    }
+
+    private void writeRecord(int offset, Order order) {
+        writeId(offset + ORDER_ID_OFFSET, order.getOrderId());
+        writeId(offset + CUSTOMER_ID_OFFSET, order.getCustomerId());
+        writeId(offset + PRODUCT_ID_OFFSET, order.getProductId());
+        buffer.putDouble(offset + PRICE_OFFSET, order.getPrice());
+        buffer.putLong(offset + TIME_OFFSET, order.getCreateDateTime().toEpochSecond(ZoneOffset.UTC));
+    }
+
+    private void writeId(int offset, String id) {
+        byte[] bytes = id.getBytes(StandardCharsets.US_ASCII);
+        if (bytes.length > ID_WIDTH) {
+            throw new IllegalArgumentException("ID longer than " + ID_WIDTH + " characters: " + id);
+        }
+        buffer.put(offset, bytes);
+        for (int i = bytes.length; i < ID_WIDTH; i++) {
+            buffer.put(offset + i, (byte) 0);
+        }
+    }
+
+    private String readId(int offset) {
+        int length = 0;
+        while (length < ID_WIDTH && buffer.get(offset + length) != 0) {
+            length++;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
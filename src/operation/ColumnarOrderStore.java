@@ -0,0 +1,288 @@
+package operation;
+
+import model.Order;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory order list stored column by column in primitive arrays.
+ * Customer and product IDs are dictionary-encoded to int codes, an order ID
+ * of the form "o_" followed by digits is packed into a long, and the price
+ * and create time are kept as a double and a long. That is about 32 bytes per
+ * order instead of an Order object with three Strings and a LocalDateTime.
+ * Order objects are only built when an order is read through {@link #get}.
+ *
+ * Getters take a shared read lock and mutations an exclusive write lock, so
+ * the store can be read while orders are added and the threads of a parallel
+ * statistics pass read it at the same time. Packed order IDs are also kept
+ * in a map to their index, so finding an order by ID does not scan the store.
+ */
+class ColumnarOrderStore extends AbstractList<Order> implements RandomAccess, OrderAggregator.OrderSource {
+    private static final String ORDER_ID_PREFIX = "o_";
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    // Packed digits of the order ID, or -(code + 1) for an ID in otherOrderIds
+    private long[] orderIds;
+    private int[] customerCodes;
+    private int[] productCodes;
+    private double[] prices;
+    // Create time as nanoseconds since the epoch, in UTC like the binary store
+    private long[] createTimes;
+    private int size;
+    private final Dictionary customerIds = new Dictionary();
+    private final Dictionary productIds = new Dictionary();
+    private final Dictionary otherOrderIds = new Dictionary();
+    // Packed order ID to the index of its first order
+    private final Map<Long, Integer> orderIndexes = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Interns strings to dense int codes
+    private static class Dictionary {
+        private final List<String> values = new ArrayList<>();
+        private final Map<String, Integer> codes = new HashMap<>();
+
+        int encode(String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                values.add(value);
+                codes.put(value, code);
+            }
+            return code;
+        }
+
+        // -1 if the value was never encoded
+        int find(String value) {
+            Integer code = codes.get(value);
+            return code == null ? -1 : code;
+        }
+
+        String decode(int code) {
+            return values.get(code);
+        }
+    }
+
+    ColumnarOrderStore() {
+        this(INITIAL_CAPACITY);
+    }
+
+    private ColumnarOrderStore(int capacity) {
+        capacity = Math.max(INITIAL_CAPACITY, capacity);
+        orderIds = new long[capacity];
+        customerCodes = new int[capacity];
+        productCodes = new int[capacity];
+        prices = new double[capacity];
+        createTimes = new long[capacity];
+    }
+
+    /**
+     * Copies orders into a new columnar store.
+     * @param orders The orders, in list order
+     * @return The store
+     */
+    static ColumnarOrderStore of(List<Order> orders) {
+        ColumnarOrderStore store = new ColumnarOrderStore(orders.size());
+        for (Order order : orders) {
+            store.add(order);
+        }
+        return store;
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Order get(int index) {
+        lock.readLock().lock();
+        try {
+            Order order = new Order(getOrderId(index), getCustomerId(index), getProductId(index), prices[index]);
+            order.setCreateTime(getCreateTime(index));
+            return order;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public double getPrice(int index) {
+        lock.readLock().lock();
+        try {
+            checkIndex(index);
+            return prices[index];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public LocalDateTime getCreateTime(int index) {
+        long time;
+        lock.readLock().lock();
+        try {
+            checkIndex(index);
+            time = createTimes[index];
+        } finally {
+            lock.readLock().unlock();
+        }
+        return LocalDateTime.ofEpochSecond(
+            Math.floorDiv(time, NANOS_PER_SECOND), (int) Math.floorMod(time, NANOS_PER_SECOND), ZoneOffset.UTC);
+    }
+
+    String getOrderId(int index) {
+        lock.readLock().lock();
+        try {
+            checkIndex(index);
+            long packed = orderIds[index];
+            return packed >= 0 ? ORDER_ID_PREFIX + packed : otherOrderIds.decode((int) -(packed + 1));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public String getCustomerId(int index) {
+        lock.readLock().lock();
+        try {
+            checkIndex(index);
+            return customerIds.decode(customerCodes[index]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public String getProductId(int index) {
+        lock.readLock().lock();
+        try {
+            checkIndex(index);
+            return productIds.decode(productCodes[index]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds an order by ID through the packed ID map, without building Orders.
+     * @param orderId The order ID
+     * @return The index of the order, or -1 if there is none
+     */
+    int indexOfOrderId(String orderId) {
+        lock.readLock().lock();
+        try {
+            long packed = pack(orderId);
+            if (packed < 0) {
+                int code = otherOrderIds.find(orderId);
+                if (code < 0) {
+                    return -1;
+                }
+                packed = -(code + 1L);
+            }
+            Integer index = orderIndexes.get(packed);
+            return index == null ? -1 : index;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean add(Order order) {
+        lock.writeLock().lock();
+        try {
+            if (size == orderIds.length) {
+                int capacity = size * 2;
+                orderIds = Arrays.copyOf(orderIds, capacity);
+                customerCodes = Arrays.copyOf(customerCodes, capacity);
+                productCodes = Arrays.copyOf(productCodes, capacity);
+                prices = Arrays.copyOf(prices, capacity);
+                createTimes = Arrays.copyOf(createTimes, capacity);
+            }
+            long packed = pack(order.getOrderId());
+            orderIds[size] = packed >= 0 ? packed : -(otherOrderIds.encode(order.getOrderId()) + 1L);
+            customerCodes[size] = customerIds.encode(order.getCustomerId());
+            productCodes[size] = productIds.encode(order.getProductId());
+            prices[size] = order.getPrice();
+            LocalDateTime createTime = order.getCreateDateTime();
+            createTimes[size] = createTime.toEpochSecond(ZoneOffset.UTC) * NANOS_PER_SECOND + createTime.getNano();
+            orderIndexes.putIfAbsent(orderIds[size], size);
+            size++;
+            modCount++;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Order remove(int index) {
+        lock.writeLock().lock();
+        try {
+            Order removed = get(index);
+            long removedId = orderIds[index];
+            int tail = size - index - 1;
+            System.arraycopy(orderIds, index + 1, orderIds, index, tail);
+            System.arraycopy(customerCodes, index + 1, customerCodes, index, tail);
+            System.arraycopy(productCodes, index + 1, productCodes, index, tail);
+            System.arraycopy(prices, index + 1, prices, index, tail);
+            System.arraycopy(createTimes, index + 1, createTimes, index, tail);
+            size--;
+            modCount++;
+            boolean firstRemoved = orderIndexes.get(removedId) == index;
+            if (firstRemoved) {
+                orderIndexes.remove(removedId);
+            }
+            // Every later order moved down one place; a later duplicate of the removed ID becomes the first
+            for (int i = index; i < size; i++) {
+                Integer first = orderIndexes.get(orderIds[i]);
+                if (first == null || first == i + 1) {
+                    orderIndexes.put(orderIds[i], i);
+                }
+            }
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            size = 0;
+            orderIndexes.clear();
+            modCount++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    // The digits after "o_" as a long, or -1 if they cannot be restored exactly from one
+    private static long pack(String orderId) {
+        int length = orderId.length();
+        if (!orderId.startsWith(ORDER_ID_PREFIX) || length == ORDER_ID_PREFIX.length()
+                || (orderId.charAt(ORDER_ID_PREFIX.length()) == '0' && length > ORDER_ID_PREFIX.length() + 1)) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = ORDER_ID_PREFIX.length(); i < length; i++) {
+            char c = orderId.charAt(i);
+            if (c < '0' || c > '9' || value > (Long.MAX_VALUE - (c - '0')) / 10) {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
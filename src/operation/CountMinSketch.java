@@ -0,0 +1,53 @@
+package operation;
+
+/**
+ * Count-Min sketch of how often each string was added. Uses a fixed table
+ * of depth x width counters whatever the number of distinct strings. An
+ * estimate is never below the true count, and with probability
+ * 1 - delta it is at most epsilon times the total count above it, where
+ * width = ceil(e / epsilon) and depth = ceil(ln(1 / delta)).
+ */
+class CountMinSketch {
+    private final double epsilon;
+    private final int width;
+    private final int depth;
+    private final long[] counts;
+    private long total;
+
+    CountMinSketch(double epsilon, double delta) {
+        this.epsilon = epsilon;
+        width = (int) Math.ceil(Math.E / epsilon);
+        depth = (int) Math.ceil(Math.log(1 / delta));
+        counts = new long[width * depth];
+    }
+
+    void add(String key) {
+        long hash = SketchHash.hash(key);
+        for (int row = 0; row < depth; row++) {
+            counts[row * width + column(hash, row)]++;
+        }
+        total++;
+    }
+
+    long estimate(String key) {
+        long hash = SketchHash.hash(key);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counts[row * width + column(hash, row)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * @return The most an estimate can exceed the true count, with probability 1 - delta
+     */
+    long errorBound() {
+        return (long) Math.ceil(epsilon * total);
+    }
+
+    // One column per row from the two halves of a single hash
+    private int column(long hash, int row) {
+        int combined = (int) hash + row * (int) (hash >>> 32);
+        return Math.floorMod(combined, width);
+    }
+}
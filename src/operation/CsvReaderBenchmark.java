@@ -0,0 +1,173 @@
+package operation;
+
+import model.Order;
+import model.Product;
+import java.io.*;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares the CsvRecordReader loaders with the BufferedReader and
+ * String.split loaders they replaced, on generated order and product files.
+ * Each loader is run a number of times after one warm-up run and the median
+ * time is reported.
+ *
+ * Usage: java operation.CsvReaderBenchmark [records] [runs]
+ */
+public class CsvReaderBenchmark {
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private interface Loader {
+        int load(File file) throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        File orders = File.createTempFile("orders", ".txt");
+        File products = File.createTempFile("products", ".txt");
+        orders.deleteOnExit();
+        products.deleteOnExit();
+        writeOrders(orders, records);
+        writeProducts(products, records);
+
+        System.out.printf("%,d records, median of %d runs%n", records, runs);
+        report("orders, split", orders, records, runs, CsvReaderBenchmark::loadOrdersWithSplit);
+        report("orders, CsvRecordReader", orders, records, runs, CsvReaderBenchmark::loadOrdersWithReader);
+        report("orders, CsvRecordReader in parallel", orders, records, runs,
+            file -> loadOrdersInParallel(file, ForkJoinPool.commonPool()));
+        report("products, split", products, records, runs, CsvReaderBenchmark::loadProductsWithSplit);
+        report("products, CsvRecordReader", products, records, runs, CsvReaderBenchmark::loadProductsWithReader);
+    }
+
+    private static void report(String name, File file, int records, int runs, Loader loader) throws IOException {
+        loader.load(file);
+        long[] times = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            int loaded = loader.load(file);
+            times[i] = System.nanoTime() - start;
+            if (loaded != records) {
+                throw new IllegalStateException(name + " loaded " + loaded + " of " + records + " records");
+            }
+        }
+        Arrays.sort(times);
+        double millis = times[runs / 2] / 1e6;
+        System.out.printf("%-38s %9.1f ms %,14.0f records/s%n", name, millis, records / (millis / 1000));
+    }
+
+    private static void writeOrders(File file, int records) throws IOException {
+        Random random = new Random(42);
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file.toPath()))) {
+            for (int i = 0; i < records; i++) {
+                Order order = new Order("o_" + (1_000_000_000L + i),
+                    String.format("u_%010d", random.nextInt(10_000)),
+                    String.format("p_%03d", random.nextInt(100) + 1),
+                    random.nextInt(200_000) / 100.0);
+                order.setCreateTime(start.plusSeconds(random.nextInt(366 * 24 * 3600)));
+                writer.println(OrderJournal.format(order));
+            }
+        }
+    }
+
+    private static void writeProducts(File file, int records) throws IOException {
+        Random random = new Random(42);
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file.toPath()))) {
+            for (int i = 0; i < records; i++) {
+                writer.printf("p_%07d,Product %d,%.2f,Category %d%n",
+                    i, i, random.nextInt(200_000) / 100.0, random.nextInt(20));
+            }
+        }
+    }
+
+    // The order loader as it was before CsvRecordReader
+    private static int loadOrdersWithSplit(File file) throws IOException {
+        List<Order> orders = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
+                if (parts.length >= 4) {
+                    double price;
+                    LocalDateTime createTime = LocalDateTime.now();
+                    try {
+                        price = Double.parseDouble(parts[3]);
+                        if (parts.length >= 5) {
+                            createTime = LocalDateTime.parse(parts[4], FORMATTER);
+                        }
+                    } catch (NumberFormatException e) {
+                        createTime = LocalDateTime.parse(parts[3], FORMATTER);
+                        price = parts.length >= 5 ? Double.parseDouble(parts[4]) : 0.0;
+                    }
+                    Order order = new Order(parts[0], parts[1], parts[2], price);
+                    order.setCreateTime(createTime);
+                    orders.add(order);
+                }
+            }
+        }
+        return orders.size();
+    }
+
+    // The journal replay's parsing loop
+    private static int loadOrdersWithReader(File file) throws IOException {
+        List<Order> orders = new ArrayList<>();
+        try (Reader in = new FileReader(file)) {
+            CsvRecordReader reader = new CsvRecordReader(in);
+            OrderJournal.RecordParser parser = new OrderJournal.RecordParser();
+            while (reader.next()) {
+                Object record = parser.parse(reader);
+                if (record instanceof Order) {
+                    orders.add((Order) record);
+                }
+            }
+        }
+        return orders.size();
+    }
+
+    private static int loadOrdersInParallel(File file, ForkJoinPool pool) throws IOException {
+        int loaded = 0;
+        for (List<Object> chunk : ParallelOrderLoader.parse(file, pool)) {
+            for (Object record : chunk) {
+                if (record instanceof Order) {
+                    loaded++;
+                }
+            }
+        }
+        return loaded;
+    }
+
+    // The products.txt loader as it was before CsvRecordReader
+    private static int loadProductsWithSplit(File file) throws IOException {
+        List<Product> products = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
+                if (parts.length >= 4) {
+                    products.add(new Product(parts[0].trim(), parts[1].trim(),
+                        Double.parseDouble(parts[2].trim()), parts[3].trim()));
+                }
+            }
+        }
+        return products.size();
+    }
+
+    // The products.txt loader's parsing loop
+    private static int loadProductsWithReader(File file) throws IOException {
+        List<Product> products = new ArrayList<>();
+        try (Reader in = new FileReader(file)) {
+            CsvRecordReader reader = new CsvRecordReader(in);
+            while (reader.next()) {
+                if (reader.fieldCount() >= 4) {
+                    products.add(new Product(reader.trimmedField(0), reader.trimmedField(1),
+                        reader.parseDouble(2), reader.trimmedField(3)));
+                }
+            }
+        }
+        return products.size();
+    }
+}
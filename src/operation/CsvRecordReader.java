@@ -0,0 +1,413 @@
+package operation;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalDateTime;
+
+/**
+ * Streaming reader for the comma separated data files.
+ * Records are scanned in place over a reusable char buffer: each field is
+ * exposed as a view (start and end offsets) and numbers are parsed straight
+ * from the buffer, so reading a record does not allocate an array of Strings
+ * the way String.split does. Strings are only created for the fields the
+ * caller actually keeps.
+ */
+class CsvRecordReader {
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_FIELDS = 16;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final Reader source;
+    private char[] buffer;
+    private int position;
+    private int limit;
+    private final int[] fieldStarts = new int[MAX_FIELDS];
+    private final int[] fieldEnds = new int[MAX_FIELDS];
+    private int fieldCount;
+    private int recordStart;
+    private int recordEnd;
+    private boolean strippingPadding;
+    private boolean trackingBytes;
+    private long lineByteOffset;
+    private int lineByteLength;
+    private int lineTerminatorBytes;
+
+    /**
+     * Reads records from a character stream.
+     * @param source The stream to read; it is not closed by this reader
+     */
+    CsvRecordReader(Reader source) {
+        this.source = source;
+        this.buffer = new char[DEFAULT_BUFFER_SIZE];
+    }
+
+    /**
+     * Reads records from a range of an existing char array.
+     * @param chars The characters to read
+     * @param start Index of the first character
+     * @param end Index after the last character
+     */
+    CsvRecordReader(char[] chars, int start, int end) {
+        this.source = null;
+        this.buffer = chars;
+        this.position = start;
+        this.limit = end;
+    }
+
+    /**
+     * Advances to the next non-empty record.
+     * @return false once the input is exhausted
+     * @throws IOException if the underlying stream fails
+     */
+    boolean next() throws IOException {
+        while (true) {
+            int lineEnd = findLineEnd();
+            if (lineEnd < 0) {
+                return false;
+            }
+            recordStart = position;
+            recordEnd = lineEnd;
+            if (recordEnd > recordStart && buffer[recordEnd - 1] == '\r') {
+                recordEnd--;
+            }
+            // Padding written after fixed-size records is not part of the record
+            while (strippingPadding && recordEnd > recordStart && buffer[recordEnd - 1] == ' ') {
+                recordEnd--;
+            }
+            if (trackingBytes) {
+                lineByteOffset += lineByteLength + lineTerminatorBytes;
+                lineByteLength = utf8Length(position, lineEnd);
+                lineTerminatorBytes = lineEnd < limit ? 1 : 0;
+            }
+            position = lineEnd < limit ? lineEnd + 1 : lineEnd;
+            if (recordEnd > recordStart) {
+                splitFields();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Makes the reader drop the spaces that pad fixed-size records, such as
+     * the slots of the user snapshot. Other files keep trailing spaces.
+     */
+    void stripPadding() {
+        strippingPadding = true;
+    }
+
+    /**
+     * Makes the reader keep track of where each line starts in the UTF-8
+     * encoded input. Must be called before the first record is read.
+     */
+    void trackByteOffsets() {
+        trackingBytes = true;
+    }
+
+    /**
+     * @return Byte offset of the current record's line in the UTF-8 input
+     */
+    long lineByteOffset() {
+        return lineByteOffset;
+    }
+
+    /**
+     * @return Length in bytes of the current record's line, including any
+     *         padding but not the line terminator
+     */
+    int lineByteLength() {
+        return lineByteLength;
+    }
+
+    /**
+     * Number of fields in the current record. Trailing empty fields are not
+     * counted, matching String.split.
+     */
+    int fieldCount() {
+        return fieldCount;
+    }
+
+    int fieldLength(int field) {
+        return fieldEnds[field] - fieldStarts[field];
+    }
+
+    char charAt(int field, int index) {
+        return buffer[fieldStarts[field] + index];
+    }
+
+    /**
+     * Checks whether the current record starts with the given character.
+     */
+    boolean startsWith(char c) {
+        return recordEnd > recordStart && buffer[recordStart] == c;
+    }
+
+    /**
+     * @return The whole current record as a String
+     */
+    String record() {
+        return new String(buffer, recordStart, recordEnd - recordStart);
+    }
+
+    /**
+     * @return The field as a String
+     */
+    String field(int field) {
+        return new String(buffer, fieldStarts[field], fieldLength(field));
+    }
+
+    /**
+     * @return The field as a String with leading and trailing whitespace removed
+     */
+    String trimmedField(int field) {
+        int start = fieldStarts[field];
+        int end = fieldEnds[field];
+        while (start < end && buffer[start] <= ' ') {
+            start++;
+        }
+        while (end > start && buffer[end - 1] <= ' ') {
+            end--;
+        }
+        return new String(buffer, start, end - start);
+    }
+
+    /**
+     * Compares a field with a String without creating a String for the field.
+     */
+    boolean fieldEquals(int field, String value) {
+        int length = fieldLength(field);
+        if (length != value.length()) {
+            return false;
+        }
+        int start = fieldStarts[field];
+        for (int i = 0; i < length; i++) {
+            if (buffer[start + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks, without throwing, whether a field is a plain decimal number
+     * such as "12", "-3.5" or "1299.99" (surrounding whitespace allowed).
+     */
+    boolean isDecimal(int field) {
+        int start = fieldStarts[field];
+        int end = fieldEnds[field];
+        while (start < end && buffer[start] <= ' ') {
+            start++;
+        }
+        while (end > start && buffer[end - 1] <= ' ') {
+            end--;
+        }
+        if (start < end && (buffer[start] == '-' || buffer[start] == '+')) {
+            start++;
+        }
+        boolean digits = false;
+        boolean dot = false;
+        for (int i = start; i < end; i++) {
+            char c = buffer[i];
+            if (c >= '0' && c <= '9') {
+                digits = true;
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else {
+                return false;
+            }
+        }
+        return digits;
+    }
+
+    /**
+     * Parses a field as a double. Plain decimals with up to 15 significant
+     * digits are converted in place and give exactly what Double.parseDouble
+     * gives; anything else is handed to Double.parseDouble.
+     * @throws NumberFormatException if the field is not a number
+     */
+    double parseDouble(int field) {
+        int start = fieldStarts[field];
+        int end = fieldEnds[field];
+        while (start < end && buffer[start] <= ' ') {
+            start++;
+        }
+        while (end > start && buffer[end - 1] <= ' ') {
+            end--;
+        }
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+            negative = buffer[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; i < end; i++) {
+            char c = buffer[i];
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+            } else if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                break;
+            }
+        }
+        if (i < end || digits == 0 || digits > 15) {
+            return Double.parseDouble(new String(buffer, start, end - start));
+        }
+        // Both operands are exact, so the single division is correctly rounded
+        double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a field as a long.
+     * @throws NumberFormatException if the field is not an integer
+     */
+    long parseLong(int field) {
+        int start = fieldStarts[field];
+        int end = fieldEnds[field];
+        if (start == end || end - start > 18) {
+            return Long.parseLong(new String(buffer, start, end - start).trim());
+        }
+        int i = start;
+        boolean negative = buffer[i] == '-';
+        if (negative || buffer[i] == '+') {
+            i++;
+        }
+        if (i == end) {
+            throw new NumberFormatException("For input string: \"" + field(field) + "\"");
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            char c = buffer[i];
+            if (c < '0' || c > '9') {
+                return Long.parseLong(new String(buffer, start, end - start).trim());
+            }
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Checks whether a field has the shape of a "yyyy-MM-dd HH:mm:ss" timestamp.
+     */
+    boolean isDateTime(int field) {
+        if (fieldLength(field) != 19) {
+            return false;
+        }
+        int start = fieldStarts[field];
+        return buffer[start + 4] == '-' && buffer[start + 7] == '-'
+            && buffer[start + 10] == ' ' && buffer[start + 13] == ':' && buffer[start + 16] == ':';
+    }
+
+    /**
+     * Parses a "yyyy-MM-dd HH:mm:ss" field without going through a DateTimeFormatter.
+     * @throws java.time.DateTimeException if the field is not a valid timestamp
+     */
+    LocalDateTime parseDateTime(int field) {
+        if (!isDateTime(field)) {
+            throw new java.time.format.DateTimeParseException(
+                "Text '" + field(field) + "' could not be parsed", field(field), 0);
+        }
+        int start = fieldStarts[field];
+        return LocalDateTime.of(
+            digits(start, 4), digits(start + 5, 2), digits(start + 8, 2),
+            digits(start + 11, 2), digits(start + 14, 2), digits(start + 17, 2));
+    }
+
+    private int digits(int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = buffer[i];
+            if (c < '0' || c > '9') {
+                throw new java.time.format.DateTimeParseException(
+                    "Unexpected character '" + c + "'", new String(buffer, start, count), i - start);
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private int utf8Length(int start, int end) {
+        int bytes = 0;
+        for (int i = start; i < end; i++) {
+            char c = buffer[i];
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                // The pair encodes to four bytes; count them on the high half
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    private void splitFields() {
+        fieldCount = 0;
+        int start = recordStart;
+        for (int i = recordStart; i <= recordEnd && fieldCount < MAX_FIELDS; i++) {
+            if (i == recordEnd || buffer[i] == ',') {
+                fieldStarts[fieldCount] = start;
+                fieldEnds[fieldCount] = i;
+                fieldCount++;
+                start = i + 1;
+            }
+        }
+        while (fieldCount > 0 && fieldEnds[fieldCount - 1] == fieldStarts[fieldCount - 1]) {
+            fieldCount--;
+        }
+    }
+
+    // Returns the index of the next '\n' (or of the end of input for a final
+    // unterminated line), refilling the buffer as needed; -1 at end of input.
+    private int findLineEnd() throws IOException {
+        int scan = position;
+        while (true) {
+            for (; scan < limit; scan++) {
+                if (buffer[scan] == '\n') {
+                    return scan;
+                }
+            }
+            int consumed = position;
+            if (!fill()) {
+                return position < limit ? limit : -1;
+            }
+            scan -= consumed - position;
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (source == null) {
+            return false;
+        }
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        if (limit == buffer.length) {
+            char[] larger = new char[buffer.length * 2];
+            System.arraycopy(buffer, 0, larger, 0, limit);
+            buffer = larger;
+        }
+        int read = source.read(buffer, limit, buffer.length - limit);
+        if (read <= 0) {
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+}
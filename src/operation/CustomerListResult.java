@@ -7,11 +7,20 @@ public class CustomerListResult {
     private List<Customer> customers;
     private int currentPage;
     private int totalPages;
+    private String nextCursor;
 
     public CustomerListResult(List<Customer> customers, int currentPage, int totalPages) {
+        this(customers, currentPage, totalPages, null);
+    }
+
+    /**
+     * @param nextCursor Continuation token for the following page, or null if this is the last page
+     */
+    public CustomerListResult(List<Customer> customers, int currentPage, int totalPages, String nextCursor) {
         this.customers = customers;
         this.currentPage = currentPage;
         this.totalPages = totalPages;
+        this.nextCursor = nextCursor;
     }
 
     public List<Customer> getCustomers() {
@@ -25,4 +34,13 @@ public class CustomerListResult {
     public int getTotalPages() {
         return totalPages;
     }
+
+    /**
+     * Opaque token that resumes the listing right after the last element of
+     * this page, even if elements were added or removed in between.
+     * @return The token, or null if there are no more pages
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
 } 
\ No newline at end of file
@@ -2,8 +2,6 @@ package operation;
 
 import model.Customer;
 import model.User;
-import java.io.*;
-import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
@@ -11,7 +9,6 @@ import java.util.regex.Pattern;
 
 public class CustomerOperation {
     private static CustomerOperation instance;
-    private static final String USER_FILE = "data/users.txt";
     private static final int CUSTOMERS_PER_PAGE = 10;
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd-MM-yyyy_HH:mm:ss");
     private final UserOperation userOperation;
@@ -68,8 +65,7 @@ public class CustomerOperation {
         switch (attributeName.toLowerCase()) {
             case "username":
                 isValid = userOperation.validateUsername(value) &&
-                         !userOperation.checkUsernameExist(value);
-                if (isValid) customerObject.setName(value);
+                         userOperation.renameUser(customerObject, value);
                 break;
             case "password":
                 isValid = userOperation.validatePassword(value);
@@ -96,41 +92,44 @@ public class CustomerOperation {
     }
 
     /**
-     * Delete the customer from the data/users.txt file.
-     * @param customerId The ID of the customer to delete
-     * @return true if deleted, false if failed
+     * Change a customer's username and email together. Both values are
+     * checked before either is applied, and the customer is saved once, so
+     * a rejected email leaves the username unchanged.
+     * @param customerObject The customer to update
+     * @param userName The new username
+     * @param email The new email
+     * @return true if both were updated and saved, false otherwise
      */
-    public boolean deleteCustomer(String customerId) {
-        List<String> lines = new ArrayList<>();
-        boolean found = false;
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(USER_FILE))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.contains("\"user_id\":\"" + customerId + "\"")) {
-                    found = true;
-                    continue;
-                }
-                lines.add(line);
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+    public boolean updateProfile(Customer customerObject, String userName, String email) {
+        if (customerObject == null || userName == null || email == null) return false;
+        if (!userOperation.validateUsername(userName) || !validateEmail(email)) {
             return false;
         }
 
-        if (found) {
-            try (PrintWriter writer = new PrintWriter(new FileWriter(USER_FILE))) {
-                for (String line : lines) {
-                    writer.println(line);
-                }
-                return true;
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        String oldName = customerObject.getName();
+        String oldEmail = customerObject.getEmail();
+        if (!userOperation.renameUser(customerObject, userName)) {
+            return false;
         }
+        customerObject.setEmail(email);
+        if (updateCustomerInFile(customerObject)) {
+            return true;
+        }
+        // Not saved; put both values back
+        customerObject.setEmail(oldEmail);
+        userOperation.renameUser(customerObject, oldName);
         return false;
     }
 
+    /**
+     * Delete the customer from the data/users.txt file.
+     * @param customerId The ID of the customer to delete
+     * @return true if deleted, false if failed
+     */
+    public boolean deleteCustomer(String customerId) {
+        return userOperation.deleteUser(customerId);
+    }
+
     /**
      * Retrieve one page of customers from the data/users.txt.
      * @param pageNumber The page number to retrieve
@@ -146,8 +145,22 @@ public class CustomerOperation {
         int start = (pageNumber - 1) * CUSTOMERS_PER_PAGE;
         int end = Math.min(start + CUSTOMERS_PER_PAGE, customers.size());
         
-        List<Customer> pageCustomers = customers.subList(start, end);
-        return new CustomerListResult(pageCustomers, pageNumber, totalPages);
+        List<Customer> pageCustomers = new ArrayList<>(customers.subList(start, end));
+        String nextCursor = pageCustomers.isEmpty() ? null
+            : userOperation.getCustomerCursorAfter(pageCustomers.get(pageCustomers.size() - 1), pageNumber);
+        return new CustomerListResult(pageCustomers, pageNumber, totalPages, nextCursor);
+    }
+
+    /**
+     * Retrieve the page of customers that follows a cursor. The page starts
+     * right after the last customer already returned, even if customers were
+     * registered or deleted since.
+     * @param cursor Continuation token from a previous CustomerListResult, or null for the first page
+     * @return A CustomerListResult containing the page and the cursor for the next one
+     * @throws IllegalArgumentException if the cursor is not a valid customer cursor
+     */
+    public CustomerListResult getCustomerList(String cursor) {
+        return userOperation.getCustomerPage(PageCursor.decode("customer", cursor), CUSTOMERS_PER_PAGE);
     }
 
     /**
@@ -162,35 +175,7 @@ public class CustomerOperation {
 
     // Helper method to update customer in file
     private boolean updateCustomerInFile(Customer customer) {
-        List<String> lines = new ArrayList<>();
-        boolean found = false;
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(USER_FILE))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.contains("\"user_id\":\"" + customer.getId() + "\"")) {
-                    lines.add(customer.toString());
-                    found = true;
-                } else {
-                    lines.add(line);
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false;
-        }
-
-        if (found) {
-            try (PrintWriter writer = new PrintWriter(new FileWriter(USER_FILE))) {
-                for (String line : lines) {
-                    writer.println(line);
-                }
-                return true;
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-        return false;
+        return userOperation.updateUser(customer);
     }
 
     public Customer getCustomerById(String customerId) {
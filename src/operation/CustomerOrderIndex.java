@@ -0,0 +1,101 @@
+package operation;
+
+import java.util.*;
+
+/**
+ * Secondary index from customer ID to the positions of that customer's
+ * orders in the order list, in ascending order. A page of one customer's
+ * history is read by position without scanning the other customers' orders.
+ * Positions follow the list: removing an order shifts every later position
+ * down by one, just as the list itself shifts.
+ */
+class CustomerOrderIndex {
+    private final Map<String, Positions> byCustomer = new HashMap<>();
+
+    // Sorted, growable list of list positions
+    private static class Positions {
+        int[] positions = new int[4];
+        int size;
+    }
+
+    /**
+     * Records an order at a position after every position recorded so far.
+     * @param customerId The customer who placed the order
+     * @param position The order's position in the order list
+     */
+    void append(String customerId, int position) {
+        Positions list = byCustomer.computeIfAbsent(customerId, c -> new Positions());
+        if (list.size == list.positions.length) {
+            list.positions = Arrays.copyOf(list.positions, list.size * 2);
+        }
+        list.positions[list.size++] = position;
+    }
+
+    /**
+     * Forgets the order at a position and shifts the later positions down.
+     * @param customerId The customer who placed the removed order
+     * @param position The position the order was removed from
+     */
+    void remove(String customerId, int position) {
+        Positions list = byCustomer.get(customerId);
+        if (list != null) {
+            int index = Arrays.binarySearch(list.positions, 0, list.size, position);
+            if (index >= 0) {
+                System.arraycopy(list.positions, index + 1, list.positions, index, list.size - index - 1);
+                list.size--;
+                if (list.size == 0) {
+                    byCustomer.remove(customerId);
+                }
+            }
+        }
+        for (Positions other : byCustomer.values()) {
+            // Positions are sorted, so only the tail after the removed one moves
+            int first = Arrays.binarySearch(other.positions, 0, other.size, position);
+            for (int i = first >= 0 ? first : -first - 1; i < other.size; i++) {
+                other.positions[i]--;
+            }
+        }
+    }
+
+    void clear() {
+        byCustomer.clear();
+    }
+
+    /**
+     * @param customerId The customer
+     * @return Number of orders the customer has
+     */
+    int count(String customerId) {
+        Positions list = byCustomer.get(customerId);
+        return list == null ? 0 : list.size;
+    }
+
+    /**
+     * @param customerId The customer
+     * @param position A position in the order list
+     * @return Number of the customer's orders before that position
+     */
+    int countBefore(String customerId, int position) {
+        Positions list = byCustomer.get(customerId);
+        if (list == null) {
+            return 0;
+        }
+        int index = Arrays.binarySearch(list.positions, 0, list.size, position);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * Positions of a range of one customer's orders.
+     * @param customerId The customer
+     * @param from Index of the customer's first order in the range, inclusive
+     * @param to Index of the customer's last order in the range, exclusive
+     * @return The positions in the order list
+     */
+    int[] positions(String customerId, int from, int to) {
+        Positions list = byCustomer.get(customerId);
+        if (list == null || from >= list.size) {
+            return new int[0];
+        }
+        return Arrays.copyOfRange(list.positions, Math.max(0, from), Math.min(to, list.size));
+    }
+}
@@ -0,0 +1,162 @@
+package operation;
+
+import model.Product;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.*;
+
+/**
+ * Per-customer spend and order count by calendar month and by product
+ * category. A customer's rollup is built from just that customer's orders
+ * the first time it is asked for and then maintained as orders are created
+ * and deleted, so repeated reads cost O(months + categories) without looking
+ * at any order.
+ * The category of each product, "Unknown" included, is remembered the first
+ * time the product is seen, so a deleted order is taken back from the
+ * category it was counted under even if the catalog has changed since.
+ */
+class CustomerSpendRollup {
+    private static final String UNKNOWN_CATEGORY = "Unknown";
+    private final Map<String, Rollup> byCustomer = new HashMap<>();
+    private final Map<String, String> categoryByProduct = new HashMap<>();
+    private final ProductOperation products;
+
+    private static class Totals {
+        long count;
+        double spend;
+    }
+
+    private static class Rollup {
+        final TreeMap<YearMonth, Totals> byMonth = new TreeMap<>();
+        final Map<String, Totals> byCategory = new HashMap<>();
+    }
+
+    CustomerSpendRollup(ProductOperation products) {
+        this.products = products;
+    }
+
+    /**
+     * Builds a customer's rollup from their orders, unless it is already held.
+     * @param customerId The customer
+     * @param source The orders
+     * @param positions Positions of the customer's orders in the source
+     */
+    synchronized void load(String customerId, OrderAggregator.OrderSource source, int[] positions) {
+        if (byCustomer.containsKey(customerId) || positions.length == 0) {
+            return;
+        }
+        Rollup rollup = new Rollup();
+        for (int position : positions) {
+            double price = source.getPrice(position);
+            add(rollup.byMonth, YearMonth.from(source.getCreateTime(position)), price);
+            add(rollup.byCategory, categoryOf(source.getProductId(position)), price);
+        }
+        byCustomer.put(customerId, rollup);
+    }
+
+    /**
+     * Counts a new order. Customers whose rollup has not been loaded are
+     * skipped; the order is counted when their rollup is built.
+     * @param customerId The customer who placed the order
+     * @param productId The product ordered
+     * @param price The price the order was placed at
+     * @param createTime When the order was placed
+     */
+    synchronized void add(String customerId, String productId, double price, LocalDateTime createTime) {
+        Rollup rollup = byCustomer.get(customerId);
+        if (rollup == null) {
+            return;
+        }
+        add(rollup.byMonth, YearMonth.from(createTime), price);
+        add(rollup.byCategory, categoryOf(productId), price);
+    }
+
+    /**
+     * Takes back an order counted by {@link #add}.
+     * @param customerId The customer who placed the deleted order
+     * @param productId The product of the deleted order
+     * @param price The price of the deleted order
+     * @param createTime When the deleted order was placed
+     */
+    synchronized void remove(String customerId, String productId, double price, LocalDateTime createTime) {
+        Rollup rollup = byCustomer.get(customerId);
+        if (rollup == null) {
+            return;
+        }
+        remove(rollup.byMonth, YearMonth.from(createTime), price);
+        remove(rollup.byCategory, categoryOf(productId), price);
+        if (rollup.byMonth.isEmpty()) {
+            byCustomer.remove(customerId);
+        }
+    }
+
+    synchronized void clear() {
+        byCustomer.clear();
+    }
+
+    /**
+     * @param customerId The customer
+     * @return The customer's spend per month, in month order
+     */
+    synchronized Map<YearMonth, Double> monthlySpend(String customerId) {
+        Map<YearMonth, Double> spend = new LinkedHashMap<>();
+        Rollup rollup = byCustomer.get(customerId);
+        if (rollup != null) {
+            rollup.byMonth.forEach((month, totals) -> spend.put(month, totals.spend));
+        }
+        return spend;
+    }
+
+    /**
+     * @param customerId The customer
+     * @return The customer's order count per month, in month order
+     */
+    synchronized Map<YearMonth, Long> monthlyOrderCounts(String customerId) {
+        Map<YearMonth, Long> counts = new LinkedHashMap<>();
+        Rollup rollup = byCustomer.get(customerId);
+        if (rollup != null) {
+            rollup.byMonth.forEach((month, totals) -> counts.put(month, totals.count));
+        }
+        return counts;
+    }
+
+    /**
+     * @param customerId The customer
+     * @return The customer's spend per product category, highest first
+     */
+    synchronized Map<String, Double> spendByCategory(String customerId) {
+        Map<String, Double> spend = new LinkedHashMap<>();
+        Rollup rollup = byCustomer.get(customerId);
+        if (rollup != null) {
+            rollup.byCategory.entrySet().stream()
+                .sorted((a, b) -> Double.compare(b.getValue().spend, a.getValue().spend))
+                .forEach(entry -> spend.put(entry.getKey(), entry.getValue().spend));
+        }
+        return spend;
+    }
+
+    private String categoryOf(String productId) {
+        return categoryByProduct.computeIfAbsent(productId, id -> {
+            Product product = products.getProductById(id);
+            return product == null ? UNKNOWN_CATEGORY : product.getCategory();
+        });
+    }
+
+    private static <K> void add(Map<K, Totals> totalsByKey, K key, double price) {
+        Totals totals = totalsByKey.computeIfAbsent(key, k -> new Totals());
+        totals.count++;
+        totals.spend += price;
+    }
+
+    private static <K> void remove(Map<K, Totals> totalsByKey, K key, double price) {
+        Totals totals = totalsByKey.get(key);
+        if (totals == null) {
+            return;
+        }
+        if (--totals.count == 0) {
+            totalsByKey.remove(key);
+        } else {
+            totals.spend -= price;
+        }
+    }
+}
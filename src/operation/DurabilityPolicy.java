@@ -0,0 +1,104 @@
+package operation;
+
+/**
+ * Controls when buffered order records are flushed to disk.
+ * The policy can be chosen at startup with the system property
+ * "orders.durability", using one of the forms "every-write",
+ * "interval:&lt;ms&gt;" or "records:&lt;count&gt;".
+ */
+public class DurabilityPolicy {
+    public enum Mode {
+        EVERY_WRITE,
+        INTERVAL,
+        RECORD_COUNT
+    }
+
+    private final Mode mode;
+    private final long value;
+
+    private DurabilityPolicy(Mode mode, long value) {
+        this.mode = mode;
+        this.value = value;
+    }
+
+    /**
+     * Flush every record before the call that produced it returns.
+     * @return The policy
+     */
+    public static DurabilityPolicy everyWrite() {
+        return new DurabilityPolicy(Mode.EVERY_WRITE, 0);
+    }
+
+    /**
+     * Flush pending records in the background every given number of milliseconds.
+     * @param millis Flush interval, must be positive
+     * @return The policy
+     */
+    public static DurabilityPolicy everyMillis(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException("Flush interval must be positive: " + millis);
+        }
+        return new DurabilityPolicy(Mode.INTERVAL, millis);
+    }
+
+    /**
+     * Flush pending records in the background once the given number has
+     * accumulated, or one second after the oldest was queued if that comes first.
+     * @param records Batch size, must be positive
+     * @return The policy
+     */
+    public static DurabilityPolicy everyRecords(int records) {
+        if (records <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + records);
+        }
+        return new DurabilityPolicy(Mode.RECORD_COUNT, records);
+    }
+
+    /**
+     * Parses a policy from its text form.
+     * @param text "every-write", "interval:&lt;ms&gt;" or "records:&lt;count&gt;"
+     * @return The policy, or every-write if the text is empty or not recognised
+     */
+    public static DurabilityPolicy parse(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            return everyWrite();
+        }
+        String[] parts = text.trim().toLowerCase().split(":", 2);
+        try {
+            switch (parts[0]) {
+                case "interval":
+                    return everyMillis(Long.parseLong(parts[1]));
+                case "records":
+                    return everyRecords(Integer.parseInt(parts[1]));
+                default:
+                    return everyWrite();
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println("Invalid durability policy '" + text + "', using every-write");
+            return everyWrite();
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return The interval in milliseconds or the batch size, depending on the mode
+     */
+    public long getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        switch (mode) {
+            case INTERVAL:
+                return "interval:" + value;
+            case RECORD_COUNT:
+                return "records:" + value;
+            default:
+                return "every-write";
+        }
+    }
+}
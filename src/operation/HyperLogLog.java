@@ -0,0 +1,69 @@
+package operation;
+
+/**
+ * HyperLogLog estimate of the number of distinct strings added. Uses
+ * 2^precision one-byte registers whatever the number of values added, and
+ * the estimate has a relative standard error of 1.04 / sqrt(2^precision).
+ */
+class HyperLogLog {
+    private static final int MIN_PRECISION = 4;
+    private static final int MAX_PRECISION = 16;
+    private static final double LINEAR_COUNTING_LIMIT = 3.0;
+    private final int precision;
+    private final byte[] registers;
+
+    HyperLogLog(int precision) {
+        this.precision = precision;
+        registers = new byte[1 << precision];
+    }
+
+    /**
+     * @param relativeError Wanted relative standard error, such as 0.02
+     * @return The smallest precision that reaches it, within the supported range
+     */
+    static int precisionFor(double relativeError) {
+        double registersNeeded = Math.ceil(Math.pow(1.04 / relativeError, 2));
+        int precision = 64 - Long.numberOfLeadingZeros((long) registersNeeded - 1);
+        return Math.max(MIN_PRECISION, Math.min(MAX_PRECISION, precision));
+    }
+
+    /**
+     * @param precision Number of index bits
+     * @return The relative standard error of a sketch with that precision
+     */
+    static double relativeError(int precision) {
+        return 1.04 / Math.sqrt(1 << precision);
+    }
+
+    void add(String value) {
+        long hash = SketchHash.hash(value);
+        int index = (int) (hash >>> (64 - precision));
+        // Position of the first one bit after the index bits, capped by the bit that is always set
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        // Up to about 3m values, counting the empty registers is more accurate than
+        // the raw estimate, which is biased upwards in that range
+        if (zeros > 0) {
+            double linearCount = m * Math.log((double) m / zeros);
+            if (linearCount <= LINEAR_COUNTING_LIMIT * m) {
+                return Math.round(linearCount);
+            }
+        }
+        double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+        return Math.round(alpha * m * m / sum);
+    }
+}
@@ -0,0 +1,177 @@
+package operation;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Generates unique IDs for orders, products and users without looking at
+ * existing data. An ID is the prefix followed by a 63-bit number made of the
+ * milliseconds since 2024-01-01 UTC (41 bits), a node number (10 bits) and a
+ * per-millisecond sequence (12 bits), so each call is O(1).
+ *
+ * The node number keeps application instances that share the data directory
+ * apart. Each instance claims a node by locking one byte of
+ * data/id-nodes.lock: the node given by -Dids.node when set, otherwise the
+ * first free one. The operating system releases that lock when the instance
+ * exits. If the node cannot be claimed, because the configured one is held by
+ * another instance or every one is, the generator refuses to start rather
+ * than risk duplicates.
+ *
+ * Each node also keeps a high-water mark in the lock file: a time up to which
+ * it may have issued IDs, reserved RESERVATION_MILLIS ahead of the clock. A
+ * restarted instance continues from that mark, so a clock that was set back
+ * while it was down cannot make it repeat an ID.
+ *
+ * The numbers are far larger than the ten-digit random IDs written by earlier
+ * versions, so new IDs cannot collide with existing ones.
+ */
+public class IdGenerator {
+    public static final String ORDER_PREFIX = "o_";
+    public static final String PRODUCT_PREFIX = "p_";
+    public static final String USER_PREFIX = "u_";
+    private static final long EPOCH_MILLIS = 1704067200000L; // 2024-01-01T00:00:00Z
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final int MAX_NODE = (1 << NODE_BITS) - 1;
+    private static final int MAX_SEQUENCE = (1 << SEQUENCE_BITS) - 1;
+    private static final String NODE_LOCK_FILE = "data/id-nodes.lock";
+    // The first MAX_NODE + 1 bytes are the node locks; the high-water marks follow, 8 bytes per node
+    private static final long HIGH_WATER_OFFSET = MAX_NODE + 1;
+    private static final long RESERVATION_MILLIS = 10_000;
+
+    private static IdGenerator instance;
+    private final int node;
+    private FileChannel nodeFile;
+    // Held for the life of the JVM so no other instance claims the same node
+    private FileLock nodeLock;
+    private long lastMillis;
+    private int sequence;
+    // No ID at or after this time has been issued; persisted before it is passed
+    private long reservedMillis;
+
+    private IdGenerator() {
+        try {
+            File lockFile = new File(NODE_LOCK_FILE);
+            lockFile.getParentFile().mkdirs();
+            nodeFile = FileChannel.open(lockFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            node = claimNode();
+            reservedMillis = readHighWater();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not claim an ID node in " + NODE_LOCK_FILE, e);
+        }
+        // Resume after everything a previous run on this node may have issued
+        lastMillis = reservedMillis;
+        sequence = -1;
+    }
+
+    /**
+     * Returns the single instance of IdGenerator.
+     * @return IdGenerator instance
+     */
+    public static synchronized IdGenerator getInstance() {
+        if (instance == null) {
+            instance = new IdGenerator();
+        }
+        return instance;
+    }
+
+    /**
+     * Generates the next ID.
+     * @param prefix One of ORDER_PREFIX, PRODUCT_PREFIX or USER_PREFIX
+     * @return A new unique ID such as o_387402713845760001
+     * @throws IllegalStateException if the high-water mark cannot be saved
+     */
+    public String nextId(String prefix) {
+        return prefix + nextNumber();
+    }
+
+    public int getNode() {
+        return node;
+    }
+
+    private synchronized long nextNumber() {
+        // Never go back in time, even if the wall clock does
+        long millis = Math.max(System.currentTimeMillis(), lastMillis);
+        if (millis == lastMillis) {
+            if (sequence == MAX_SEQUENCE) {
+                if (System.currentTimeMillis() < lastMillis) {
+                    // The clock is behind the high-water mark; waiting for it could take
+                    // as long as it was set back, so take the next millisecond instead
+                    millis = lastMillis + 1;
+                }
+                // This millisecond is used up; wait for the clock to reach the next one
+                while (millis <= lastMillis) {
+                    Thread.onSpinWait();
+                    millis = System.currentTimeMillis();
+                }
+                sequence = 0;
+            } else {
+                sequence++;
+            }
+        } else {
+            sequence = 0;
+        }
+        if (millis >= reservedMillis) {
+            reserve(millis + RESERVATION_MILLIS);
+        }
+        lastMillis = millis;
+        return ((millis - EPOCH_MILLIS) << (NODE_BITS + SEQUENCE_BITS))
+            | ((long) node << SEQUENCE_BITS)
+            | sequence;
+    }
+
+    private int claimNode() throws IOException {
+        Integer configured = Integer.getInteger("ids.node");
+        if (configured != null) {
+            if (configured < 0 || configured > MAX_NODE) {
+                throw new IllegalArgumentException("ids.node must be between 0 and " + MAX_NODE);
+            }
+            nodeLock = nodeFile.tryLock(configured, 1, false);
+            if (nodeLock == null) {
+                throw new IllegalStateException("ID node " + configured + " in " + NODE_LOCK_FILE
+                    + " is in use by another instance");
+            }
+            return configured;
+        }
+        for (int candidate = 0; candidate <= MAX_NODE; candidate++) {
+            FileLock lock = nodeFile.tryLock(candidate, 1, false);
+            if (lock != null) {
+                nodeLock = lock;
+                return candidate;
+            }
+        }
+        throw new IllegalStateException("Every ID node in " + NODE_LOCK_FILE + " is in use");
+    }
+
+    private long readHighWater() throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(Long.BYTES);
+        long position = HIGH_WATER_OFFSET + (long) node * Long.BYTES;
+        while (bytes.hasRemaining()) {
+            if (nodeFile.read(bytes, position + bytes.position()) < 0) {
+                // Never written for this node
+                return -1;
+            }
+        }
+        return bytes.getLong(0);
+    }
+
+    private void reserve(long millis) {
+        ByteBuffer bytes = ByteBuffer.allocate(Long.BYTES);
+        bytes.putLong(0, millis);
+        try {
+            long position = HIGH_WATER_OFFSET + (long) node * Long.BYTES;
+            while (bytes.hasRemaining()) {
+                nodeFile.write(bytes, position + bytes.position());
+            }
+            nodeFile.force(false);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not save the ID high-water mark", e);
+        }
+        reservedMillis = millis;
+    }
+}
@@ -0,0 +1,99 @@
+package operation;
+
+import model.Customer;
+import model.User;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures login throughput under concurrent load: 1, 2, 4 and so on up to
+ * maxThreads threads (by default the number of available processors) run
+ * logins against the same generated users for a fixed time. It compares the
+ * username index that login uses now with the list scan it replaced. One
+ * login in ten uses a wrong password.
+ *
+ * Usage: java operation.LoginBenchmark [users] [secondsPerRun] [maxThreads]
+ */
+public class LoginBenchmark {
+    private interface Login {
+        User login(String username, String password);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int userCount = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 2;
+        List<User> users = new ArrayList<>(userCount);
+        Map<String, User> usersByName = new ConcurrentHashMap<>();
+        for (int i = 0; i < userCount; i++) {
+            User user = new Customer(String.format("u_%010d", i), "user" + i, "password" + i,
+                "user" + i + "@example.com", "0400000000");
+            users.add(user);
+            usersByName.putIfAbsent(user.getName(), user);
+        }
+        // The login as it was before the index
+        Login scan = (username, password) -> users.stream()
+            .filter(u -> u.getName().equals(username) && u.getPassword().equals(password))
+            .findFirst()
+            .orElse(null);
+        Login index = (username, password) -> {
+            User user = username == null ? null : usersByName.get(username);
+            return user != null && user.getPassword().equals(password) ? user : null;
+        };
+
+        // Warm up both logins so the first measured run is not spent compiling
+        throughput(scan, userCount, 1, seconds / 2);
+        throughput(index, userCount, 1, seconds / 2);
+        System.out.printf("%,d users, %.1f s per run%n", userCount, seconds);
+        System.out.printf("%8s %18s %18s%n", "threads", "scan logins/s", "index logins/s");
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; ; threads = Math.min(threads * 2, maxThreads)) {
+            System.out.printf("%8d %,18.0f %,18.0f%n", threads,
+                throughput(scan, userCount, threads, seconds), throughput(index, userCount, threads, seconds));
+            if (threads >= maxThreads) {
+                break;
+            }
+        }
+    }
+
+    // Runs logins on the given number of threads for a fixed time; returns logins per second
+    private static double throughput(Login login, int userCount, int threads, double seconds)
+            throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        LongAdder logins = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long durationNanos = (long) (seconds * 1e9);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            workers.add(pool.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                start.await();
+                long end = System.nanoTime() + durationNanos;
+                long count = 0;
+                while (System.nanoTime() < end) {
+                    int i = random.nextInt(userCount);
+                    String password = random.nextInt(10) == 0 ? "wrong" : "password" + i;
+                    User user = login.login("user" + i, password);
+                    if (user == null && !password.equals("wrong")) {
+                        throw new IllegalStateException("Login failed for user" + i);
+                    }
+                    count++;
+                }
+                logins.add(count);
+                return null;
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> worker : workers) {
+            try {
+                worker.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        double elapsed = (System.nanoTime() - begin) / 1e9;
+        pool.shutdown();
+        return logins.sum() / elapsed;
+    }
+}
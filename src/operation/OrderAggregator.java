@@ -0,0 +1,157 @@
+package operation;
+
+import model.Order;
+import model.Product;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes every admin statistics figure in one parallel pass over the
+ * order store. The orders are split into index ranges on a fork-join pool;
+ * each range accumulates its own totals, joining each order's product to
+ * its category through the product ID lookup table, and the partial totals
+ * are merged as the tasks join.
+ *
+ * A basket is a run of consecutive orders with the same customer and create
+ * time, which is how a cart placed with createOrders is stored. A range
+ * looks at the order just before it to tell whether its first order starts
+ * a basket, so runs that cross a split are counted once.
+ */
+class OrderAggregator extends RecursiveTask<OrderAggregator.Totals> {
+    private static final long serialVersionUID = 1L;
+    private static final int SPLIT_THRESHOLD = 4096;
+    private static final String UNKNOWN_CATEGORY = "Unknown";
+
+    /**
+     * Read access to the fields of the orders in a store, by position.
+     * Must be safe to call from several threads at once.
+     */
+    interface OrderSource {
+        int size();
+
+        String getCustomerId(int index);
+
+        String getProductId(int index);
+
+        double getPrice(int index);
+
+        LocalDateTime getCreateTime(int index);
+    }
+
+    /**
+     * @param orders Orders held as Order objects
+     * @return A source reading the fields of those objects
+     */
+    static OrderSource of(List<Order> orders) {
+        return new OrderSource() {
+            public int size() {
+                return orders.size();
+            }
+
+            public String getCustomerId(int index) {
+                return orders.get(index).getCustomerId();
+            }
+
+            public String getProductId(int index) {
+                return orders.get(index).getProductId();
+            }
+
+            public double getPrice(int index) {
+                return orders.get(index).getPrice();
+            }
+
+            public LocalDateTime getCreateTime(int index) {
+                return orders.get(index).getCreateDateTime();
+            }
+        };
+    }
+
+    // Totals of one index range
+    static class Totals {
+        final Map<String, Double> revenueByCategory = new HashMap<>();
+        final Map<YearMonth, Double> revenueByMonth = new HashMap<>();
+        final Map<String, Long> orderCountByCustomer = new HashMap<>();
+        long orderCount;
+        long basketCount;
+        double revenue;
+
+        void merge(Totals other) {
+            other.revenueByCategory.forEach((k, v) -> revenueByCategory.merge(k, v, Double::sum));
+            other.revenueByMonth.forEach((k, v) -> revenueByMonth.merge(k, v, Double::sum));
+            other.orderCountByCustomer.forEach((k, v) -> orderCountByCustomer.merge(k, v, Long::sum));
+            orderCount += other.orderCount;
+            basketCount += other.basketCount;
+            revenue += other.revenue;
+        }
+    }
+
+    private final OrderSource source;
+    private final ProductOperation products;
+    private final int from;
+    private final int to;
+
+    private OrderAggregator(OrderSource source, ProductOperation products, int from, int to) {
+        this.source = source;
+        this.products = products;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Aggregates every order in a store.
+     * @param source The orders
+     * @param products Product lookup table used to find each order's category
+     * @param pool The pool to aggregate on
+     * @return The statistics
+     */
+    static OrderStatistics aggregate(OrderSource source, ProductOperation products, ForkJoinPool pool) {
+        Totals totals = pool.invoke(new OrderAggregator(source, products, 0, source.size()));
+        return new OrderStatistics(totals.revenueByCategory, new TreeMap<>(totals.revenueByMonth),
+            totals.orderCountByCustomer, totals.orderCount, totals.basketCount, totals.revenue);
+    }
+
+    @Override
+    protected Totals compute() {
+        if (to - from <= SPLIT_THRESHOLD) {
+            return computeDirectly();
+        }
+        int middle = (from + to) >>> 1;
+        OrderAggregator left = new OrderAggregator(source, products, from, middle);
+        left.fork();
+        Totals totals = new OrderAggregator(source, products, middle, to).compute();
+        totals.merge(left.join());
+        return totals;
+    }
+
+    private Totals computeDirectly() {
+        Totals totals = new Totals();
+        // Category per product, so each product is looked up once per range
+        Map<String, String> categories = new HashMap<>();
+        String previousCustomer = from > 0 ? source.getCustomerId(from - 1) : null;
+        LocalDateTime previousTime = from > 0 ? source.getCreateTime(from - 1) : null;
+        for (int i = from; i < to; i++) {
+            String customerId = source.getCustomerId(i);
+            LocalDateTime createTime = source.getCreateTime(i);
+            double price = source.getPrice(i);
+            String category = categories.computeIfAbsent(source.getProductId(i), id -> {
+                Product product = products.getProductById(id);
+                return product == null ? UNKNOWN_CATEGORY : product.getCategory();
+            });
+
+            totals.revenueByCategory.merge(category, price, Double::sum);
+            totals.revenueByMonth.merge(YearMonth.from(createTime), price, Double::sum);
+            totals.orderCountByCustomer.merge(customerId, 1L, Long::sum);
+            totals.orderCount++;
+            totals.revenue += price;
+            if (!customerId.equals(previousCustomer) || !createTime.equals(previousTime)) {
+                totals.basketCount++;
+            }
+            previousCustomer = customerId;
+            previousTime = createTime;
+        }
+        return totals;
+    }
+}
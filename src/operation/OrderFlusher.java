@@ -0,0 +1,193 @@
+package operation;
+
+import model.Order;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Write-behind stage in front of the order journal.
+ * Records are queued in memory and written to the journal in batches by a
+ * background thread, so the caller does not wait for disk I/O. Under the
+ * every-write policy records are written on the caller's thread instead.
+ * Every write is forced to disk by the journal. Under the record-count
+ * policy a batch that has not filled up is still written once its oldest
+ * record has waited MAX_RECORD_DELAY_MILLIS.
+ */
+class OrderFlusher {
+    static final long MAX_RECORD_DELAY_MILLIS = 1000;
+
+    private final PartitionedOrderJournal journal;
+    private final DurabilityPolicy policy;
+    // Held while a batch is drained and written so batches reach the journal in order
+    private final Object writeLock = new Object();
+    private List<String> pending = new ArrayList<>();
+    // When the oldest queued record was queued
+    private long firstPendingNanos;
+    private boolean closed;
+    private Thread flusherThread;
+
+    OrderFlusher(PartitionedOrderJournal journal, DurabilityPolicy policy) {
+        this.journal = journal;
+        this.policy = policy;
+        if (policy.getMode() != DurabilityPolicy.Mode.EVERY_WRITE) {
+            flusherThread = new Thread(this::run, "order-flusher");
+            flusherThread.setDaemon(true);
+            flusherThread.start();
+        }
+    }
+
+    DurabilityPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Hands a record to the journal according to the durability policy.
+     * @param record Order record or tombstone
+     * @return false if the record could not be accepted or, under every-write, not written
+     */
+    boolean submit(String record) {
+        return submit(List.of(record));
+    }
+
+    /**
+     * Hands a group of records to the journal as one unit: they are queued
+     * together and always written in the same batch.
+     * @param records Order records and tombstones, in order
+     * @return false if the records could not be accepted or, under every-write, not written
+     */
+    boolean submit(List<String> records) {
+        if (policy.getMode() == DurabilityPolicy.Mode.EVERY_WRITE) {
+            synchronized (writeLock) {
+                return !closed && journal.appendRecords(records).isEmpty();
+            }
+        }
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            boolean wasEmpty = pending.isEmpty();
+            pending.addAll(records);
+            if (wasEmpty) {
+                firstPendingNanos = System.nanoTime();
+            }
+            // Under record-count the flusher starts its delay timer once something is queued
+            if (policy.getMode() == DurabilityPolicy.Mode.RECORD_COUNT
+                    && (wasEmpty || pending.size() >= policy.getValue())) {
+                notifyAll();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes every queued record to the journal before returning.
+     * @return true if nothing is left pending
+     */
+    boolean flush() {
+        synchronized (writeLock) {
+            List<String> batch = drain();
+            if (batch.isEmpty()) {
+                return true;
+            }
+            // Only the records of the segments that failed are written again
+            List<String> unwritten = journal.appendRecords(batch);
+            if (unwritten.isEmpty()) {
+                return true;
+            }
+            requeue(unwritten);
+            return false;
+        }
+    }
+
+    /**
+     * Compacts the journal segments that have accumulated enough dead records.
+     * Queued records are written first: the compaction snapshot already holds
+     * their orders, so writing them after it would journal them twice.
+     * @param liveOrders All live orders
+     */
+    void compactIfNeeded(List<Order> liveOrders) {
+        synchronized (writeLock) {
+            if (journal.needsCompaction() && flush()) {
+                journal.compactIfNeeded(liveOrders);
+            }
+        }
+    }
+
+    /**
+     * Drops queued records and truncates the journal.
+     */
+    void reset() {
+        synchronized (writeLock) {
+            drain();
+            journal.reset();
+        }
+    }
+
+    /**
+     * Flushes queued records and stops the background thread.
+     */
+    void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        if (flusherThread != null) {
+            try {
+                flusherThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+
+    private void run() {
+        while (true) {
+            synchronized (this) {
+                try {
+                    if (!closed) {
+                        if (policy.getMode() == DurabilityPolicy.Mode.INTERVAL) {
+                            wait(policy.getValue());
+                        } else {
+                            while (!closed && pending.size() < policy.getValue()) {
+                                if (pending.isEmpty()) {
+                                    wait();
+                                    continue;
+                                }
+                                long waited = (System.nanoTime() - firstPendingNanos) / 1_000_000;
+                                if (waited >= MAX_RECORD_DELAY_MILLIS) {
+                                    break;
+                                }
+                                wait(MAX_RECORD_DELAY_MILLIS - waited);
+                            }
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (closed) {
+                    return;
+                }
+            }
+            flush();
+        }
+    }
+
+    private synchronized List<String> drain() {
+        List<String> batch = pending;
+        pending = new ArrayList<>();
+        return batch;
+    }
+
+    private synchronized void requeue(List<String> batch) {
+        if (pending.isEmpty()) {
+            // The delay is counted again from now, so a failing journal is retried, not spun on
+            firstPendingNanos = System.nanoTime();
+        }
+        batch.addAll(pending);
+        pending = batch;
+    }
+}
@@ -0,0 +1,456 @@
+package operation;
+
+import model.Order;
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Append-only journal for one order file.
+ * A new order is appended as a single CSV record and a delete is appended
+ * as a tombstone record ("-" followed by the order ID), so no mutation has to
+ * rewrite the whole file. When dead records outnumber live ones the file is
+ * compacted on a background thread.
+ *
+ * The orders of one checkout are written as a batch: a begin marker, the
+ * order records each prefixed with "+", and a commit marker. Replay only
+ * applies a batch once its commit marker has been read, so a checkout that
+ * was cut short by a failed write or a crash leaves no orders behind.
+ */
+class OrderJournal {
+    static final String TOMBSTONE_PREFIX = "-";
+    static final char BATCH_BEGIN = '[';
+    static final char BATCH_RECORD_PREFIX = '+';
+    static final char BATCH_COMMIT = ']';
+    private static final int MIN_GARBAGE_FOR_COMPACTION = 1000;
+
+    private final File file;
+    private FileOutputStream stream;
+    private BufferedWriter writer;
+    private int garbageRecords;
+    private int totalRecords;
+    private int generation;
+    private boolean compacting;
+    // Records appended while a compaction is writing its snapshot
+    private List<String> capturedRecords;
+    private static final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "order-journal-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    OrderJournal(String path) {
+        this.file = new File(path);
+    }
+
+    /**
+     * Formats an order as a journal record.
+     * @param order The order to format
+     * @return The CSV record without a line terminator
+     */
+    static String format(Order order) {
+        return String.format("%s,%s,%s,%.2f,%s",
+            order.getOrderId(),
+            order.getCustomerId(),
+            order.getProductId(),
+            order.getPrice(),
+            order.getCreateTime());
+    }
+
+    /**
+     * Formats the orders of one checkout as a batch that replay applies
+     * entirely or not at all. The markers end with the month of the orders,
+     * which all share one create time, so the whole batch goes to one segment.
+     * @param orders The orders to write together
+     * @return The begin marker, the order records and the commit marker
+     */
+    static List<String> formatBatch(List<Order> orders) {
+        String month = PartitionedOrderJournal.monthOf(orders.get(0));
+        List<String> records = new ArrayList<>(orders.size() + 2);
+        records.add(BATCH_BEGIN + "," + month);
+        for (Order order : orders) {
+            records.add(BATCH_RECORD_PREFIX + format(order));
+        }
+        records.add(BATCH_COMMIT + "," + month);
+        return records;
+    }
+
+    /**
+     * Checks whether a journal line is a tombstone.
+     * @param line The line read from the journal
+     * @return true if the line deletes an earlier record
+     */
+    static boolean isTombstone(String line) {
+        return line.startsWith(TOMBSTONE_PREFIX);
+    }
+
+    /**
+     * Replays the journal: records add orders, tombstones remove them again.
+     * Replay is keyed by order ID so a record written twice is only counted once.
+     * @return The live orders in the order they were first written
+     */
+    synchronized List<Order> replay() {
+        return replay(LocalDateTime.now());
+    }
+
+    /**
+     * Replays the journal like {@link #replay()}.
+     * @param missingTime Create time given to records written without one
+     * @return The live orders in the order they were first written
+     */
+    synchronized List<Order> replay(LocalDateTime missingTime) {
+        Replay replay = new Replay();
+        try (Reader in = new FileReader(file)) {
+            CsvRecordReader reader = new CsvRecordReader(in);
+            RecordParser parser = new RecordParser(missingTime);
+            while (reader.next()) {
+                Object record = parser.parse(reader);
+                if (record != null) {
+                    replay.apply(record);
+                }
+            }
+        } catch (IOException e) {
+            // File might not exist yet, which is okay
+            replay = new Replay();
+        }
+        return finish(replay);
+    }
+
+    /**
+     * Replays the journal like {@link #replay()}, but parses it in chunks on a fork-join pool.
+     * @param pool The pool to parse on
+     * @return The live orders in the order they were first written
+     */
+    synchronized List<Order> replayParallel(ForkJoinPool pool) {
+        Replay replay = new Replay();
+        if (file.exists()) {
+            try {
+                for (List<Object> chunk : ParallelOrderLoader.parse(file, pool)) {
+                    for (Object record : chunk) {
+                        replay.apply(record);
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                replay = new Replay();
+            }
+        }
+        return finish(replay);
+    }
+
+    private List<Order> finish(Replay replay) {
+        totalRecords = replay.records;
+        garbageRecords = replay.records - replay.replayed.size();
+        return new ArrayList<>(replay.replayed.values());
+    }
+
+    /**
+     * Turns journal records into orders and tombstones.
+     * Older files wrote the create time before the price; the column layout is
+     * detected from the first record instead of by catching a
+     * NumberFormatException on every row.
+     */
+    static class RecordParser {
+        private final LocalDateTime missingTime;
+        private int priceField = -1;
+
+        RecordParser() {
+            this(LocalDateTime.now());
+        }
+
+        /**
+         * @param missingTime Create time given to records written without one
+         */
+        RecordParser(LocalDateTime missingTime) {
+            this.missingTime = missingTime;
+        }
+
+        /**
+         * Parses the reader's current record.
+         * @param reader A reader positioned on a record
+         * @return The Order for a record, the deleted order ID (a String) for a
+         *         tombstone, a BatchMarker or BatchedOrder for the lines of a
+         *         checkout batch, or null if the record is not valid
+         */
+        Object parse(CsvRecordReader reader) {
+            if (reader.startsWith(TOMBSTONE_PREFIX.charAt(0))) {
+                return reader.field(0).substring(TOMBSTONE_PREFIX.length());
+            }
+            if (reader.startsWith(BATCH_BEGIN)) {
+                return BatchMarker.BEGIN;
+            }
+            if (reader.startsWith(BATCH_COMMIT)) {
+                return BatchMarker.COMMIT;
+            }
+            if (reader.fieldCount() < 4) {
+                return null;
+            }
+            if (priceField < 0) {
+                priceField = reader.isDecimal(3) ? 3 : 4;
+            }
+            int price = priceField;
+            int time = 7 - priceField;
+            if ((price == 3) == reader.isDateTime(3)) {
+                // This row does not follow the layout of the rest of the file
+                price = time;
+                time = 7 - price;
+            }
+            boolean batched = reader.startsWith(BATCH_RECORD_PREFIX);
+            String orderId = reader.field(0);
+            Order order = new Order(batched ? orderId.substring(1) : orderId, reader.field(1), reader.field(2),
+                price < reader.fieldCount() ? reader.parseDouble(price) : 0.0);
+            order.setCreateTime(time < reader.fieldCount() ? reader.parseDateTime(time) : missingTime);
+            return batched ? new BatchedOrder(order) : order;
+        }
+    }
+
+    /**
+     * Begin and commit markers around a checkout batch.
+     */
+    enum BatchMarker { BEGIN, COMMIT }
+
+    /**
+     * Order record written inside a checkout batch.
+     */
+    static final class BatchedOrder {
+        final Order order;
+
+        BatchedOrder(Order order) {
+            this.order = order;
+        }
+    }
+
+    /**
+     * Applies parsed records in journal order. The orders of a batch are held
+     * back until its commit marker; a batch that is followed by anything else
+     * (another begin marker, a plain record, a tombstone or the end of the
+     * file) was never committed and is dropped.
+     */
+    private static class Replay {
+        final Map<String, Order> replayed = new LinkedHashMap<>();
+        List<Order> batch;
+        int records;
+
+        void apply(Object record) {
+            records++;
+            if (record == BatchMarker.BEGIN) {
+                batch = new ArrayList<>();
+            } else if (record == BatchMarker.COMMIT) {
+                if (batch != null) {
+                    for (Order order : batch) {
+                        replayed.putIfAbsent(order.getOrderId(), order);
+                    }
+                }
+                batch = null;
+            } else if (record instanceof BatchedOrder) {
+                if (batch != null) {
+                    batch.add(((BatchedOrder) record).order);
+                }
+            } else {
+                batch = null;
+                if (record instanceof Order) {
+                    Order order = (Order) record;
+                    replayed.putIfAbsent(order.getOrderId(), order);
+                } else {
+                    replayed.remove((String) record);
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the tombstone record for a deleted order.
+     * The record names the month partition of the deleted order so it can be
+     * routed to the same file as the record it cancels.
+     * @param order The deleted order
+     * @return The tombstone record without a line terminator
+     */
+    static String tombstone(Order order) {
+        return TOMBSTONE_PREFIX + order.getOrderId() + "," + PartitionedOrderJournal.monthOf(order);
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Appends a batch of records and forces them to disk together.
+     * @param records Order records and tombstones, in order
+     * @return true if the whole batch was written, false otherwise
+     */
+    synchronized boolean appendRecords(List<String> records) {
+        try {
+            if (writer == null) {
+                boolean brokenLine = endsInsideLine();
+                stream = new FileOutputStream(file, true);
+                writer = new BufferedWriter(new OutputStreamWriter(stream));
+                if (brokenLine) {
+                    // A write cut short left half a line; do not run the next record into it
+                    writer.newLine();
+                }
+            }
+            for (String record : records) {
+                writer.write(record);
+                writer.newLine();
+            }
+            writer.flush();
+            stream.getChannel().force(false);
+        } catch (IOException e) {
+            e.printStackTrace();
+            closeWriter();
+            return false;
+        }
+        totalRecords += records.size();
+        for (String record : records) {
+            if (isTombstone(record)) {
+                // The tombstone and the record it cancels are both garbage now
+                garbageRecords += 2;
+            } else if (record.charAt(0) == BATCH_BEGIN || record.charAt(0) == BATCH_COMMIT) {
+                garbageRecords++;
+            }
+        }
+        if (capturedRecords != null) {
+            capturedRecords.addAll(records);
+        }
+        return true;
+    }
+
+    /**
+     * Truncates the journal. Any compaction still in flight is discarded.
+     */
+    synchronized void reset() {
+        generation++;
+        capturedRecords = null;
+        garbageRecords = 0;
+        totalRecords = 0;
+        closeWriter();
+        try {
+            // Opening without append mode empties the file
+            new FileWriter(file).close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Checks whether the journal holds enough dead records to be worth compacting.
+     * @return true if a compaction should be started
+     */
+    synchronized boolean needsCompaction() {
+        return !compacting && worthCompacting(garbageRecords, totalRecords);
+    }
+
+    /**
+     * @param garbageRecords Number of dead records in a journal
+     * @param totalRecords Number of records in the journal
+     * @return true if a journal with these counts should be compacted
+     */
+    static boolean worthCompacting(int garbageRecords, int totalRecords) {
+        return garbageRecords >= MIN_GARBAGE_FOR_COMPACTION && garbageRecords > totalRecords - garbageRecords;
+    }
+
+    /**
+     * Rewrites the journal right away so that it holds only its live orders.
+     * Used before the journal is indexed in place, while nothing else writes to it.
+     */
+    synchronized void compactNow() {
+        if (compacting) {
+            return;
+        }
+        List<Order> liveOrders = replay();
+        File tempFile = new File(file.getPath() + ".compact");
+        try {
+            writeOrders(tempFile, liveOrders);
+            closeWriter();
+            Files.move(tempFile.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            totalRecords = liveOrders.size();
+            garbageRecords = 0;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Starts rewriting the journal in the background so that it holds only the
+     * given live orders. Records appended while the snapshot is being written
+     * are carried over to the new file.
+     * @param liveOrders Snapshot of the live orders, in order
+     */
+    synchronized void compactAsync(List<Order> liveOrders) {
+        if (compacting) {
+            return;
+        }
+        compacting = true;
+        capturedRecords = new ArrayList<>();
+        garbageRecords = 0;
+        final int startGeneration = generation;
+        compactor.submit(() -> compact(liveOrders, startGeneration));
+    }
+
+    private void compact(List<Order> liveOrders, int startGeneration) {
+        File tempFile = new File(file.getPath() + ".compact");
+        try {
+            writeOrders(tempFile, liveOrders);
+            synchronized (this) {
+                if (generation != startGeneration) {
+                    // The journal was reset while we were writing; the snapshot is stale
+                    Files.deleteIfExists(tempFile.toPath());
+                    return;
+                }
+                try (BufferedWriter out = new BufferedWriter(new FileWriter(tempFile, true))) {
+                    for (String record : capturedRecords) {
+                        out.write(record);
+                        out.newLine();
+                    }
+                }
+                closeWriter();
+                Files.move(tempFile.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                totalRecords = liveOrders.size() + capturedRecords.size();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            synchronized (this) {
+                capturedRecords = null;
+                compacting = false;
+            }
+        }
+    }
+
+    private static void writeOrders(File target, List<Order> orders) throws IOException {
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(target))) {
+            for (Order order : orders) {
+                out.write(format(order));
+                out.newLine();
+            }
+        }
+    }
+
+    private boolean endsInsideLine() throws IOException {
+        if (!file.exists() || file.length() == 0) {
+            return false;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            in.seek(in.length() - 1);
+            return in.read() != '\n';
+        }
+    }
+
+    private void closeWriter() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            writer = null;
+            stream = null;
+        }
+    }
+}
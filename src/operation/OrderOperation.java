@@ -3,25 +3,74 @@ package operation;
 import model.Order;
 import model.Product;
 import java.io.*;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.YearMonth;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ThreadLocalRandom;
 
 public class OrderOperation {
     private static OrderOperation instance;
+    private static final String DATA_DIRECTORY = "data";
+    // Unpartitioned order file written by earlier versions; migrated into monthly segments on load
     private static final String ORDERS_FILE = "data/orders.txt";
+    private static final String ORDERS_BINARY_FILE = "data/orders.bin";
+    private static final String ROLLUPS_FILE = "data/order-rollups.dat";
     private static final int ITEMS_PER_PAGE = 10;
     private List<Order> orders;
     private final ProductOperation productOperation;
-    private Set<String> usedOrderIds;
+    private final IdGenerator idGenerator;
+    private final PartitionedOrderJournal journal;
+    private OrderFlusher flusher;
+    // Set when orders live in the memory-mapped binary store instead of the CSV journal
+    private BinaryOrderStore binaryStore;
+    // Set when orders are read from the journal page by page instead of loaded up front
+    private PagedOrderStore pagedStore;
+    // Set when orders are kept in primitive columns instead of Order objects
+    private ColumnarOrderStore columnarStore;
+    // Positions of each customer's orders in the order list
+    private final CustomerOrderIndex customerIndex = new CustomerOrderIndex();
+    // Whether the customer index covers the loaded orders; the binary store builds it on first use
+    private boolean customerIndexBuilt;
+    // Insertion sequence of each order in the order list; the key for cursor pagination
+    private final SequenceColumn orderSequence = new SequenceColumn();
+    // Orders by create time, overall and per customer
+    private final OrderTimeIndex timeIndex = new OrderTimeIndex();
+    // Running sales totals per product
+    private final ProductSalesLeaderboard leaderboard = new ProductSalesLeaderboard();
+    // Spend per customer by month and category
+    private final CustomerSpendRollup spendRollup;
+    // Units and revenue by day, month, category and product; saved across restarts.
+    // Null until first use when the lazy loader finds no saved cube matching the journal
+    private OrderRollupCube rollupCube;
+    // Set by -Dorders.sketches=true; approximate distinct customers and heavy hitters
+    private final OrderSketches sketches;
+    // Whether the sketches cover the loaded orders; the lazy loader fills them on first use
+    private boolean sketchesBuilt;
+    // Whether the time index, leaderboard and rollups cover the loaded orders; the lazy loader and the binary store build them on first use
+    private boolean orderIndexesBuilt;
+    private String loadReport = "";
 
     private OrderOperation() {
         orders = new ArrayList<>();
         productOperation = ProductOperation.getInstance();
-        usedOrderIds = new HashSet<>();
-        loadOrders();
+        spendRollup = new CustomerSpendRollup(productOperation);
+        sketches = createSketches();
+        idGenerator = IdGenerator.getInstance();
+        journal = new PartitionedOrderJournal(DATA_DIRECTORY, ORDERS_FILE);
+        if (!"binary".equalsIgnoreCase(System.getProperty("orders.store")) || !openBinaryStore()) {
+            loadOrders();
+            flusher = new OrderFlusher(journal, DurabilityPolicy.parse(System.getProperty("orders.durability")));
+        }
+        rollupCube = OrderRollupCube.load(ROLLUPS_FILE, orders.size(), lastOrderId(), productOperation);
+        // The lazy loader would have to read every page for these, so it waits until they are used
+        if (pagedStore == null) {
+            ensureRollupCube();
+            ensureSketches();
+        }
+        // Make sure queued orders reach the disk when the application exits
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "order-flusher-shutdown"));
     }
 
     public static OrderOperation getInstance() {
@@ -32,20 +81,29 @@ public class OrderOperation {
     }
 
     private String generateUniqueOrderId() {
-        Set<String> existingIds = orders.stream()
-                .map(Order::getOrderId)
-                .collect(Collectors.toSet());
-                
-        String orderId;
-        do {
-            int number = ThreadLocalRandom.current().nextInt(1000000000, 2000000000);
-            orderId = String.format("o_%010d", number);
-        } while (existingIds.contains(orderId));
-        
-        return orderId;
+        return idGenerator.nextId(IdGenerator.ORDER_PREFIX);
+    }
+
+    private List<String> generateUniqueOrderIds(int count) {
+        List<String> orderIds = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            orderIds.add(generateUniqueOrderId());
+        }
+        return orderIds;
     }
 
     public boolean createOrder(String customerId, String productId) {
+        return createOrder(customerId, productId, LocalDateTime.now());
+    }
+
+    /**
+     * Creates an order with the given create time.
+     * @param customerId ID of the customer placing the order
+     * @param productId ID of the product ordered
+     * @param createTime When the order was placed
+     * @return true if the order was created, false if the product does not exist or the order could not be saved
+     */
+    public boolean createOrder(String customerId, String productId, LocalDateTime createTime) {
         Product product = productOperation.getProductById(productId);
         if (product == null) {
             return false;
@@ -56,39 +114,190 @@ public class OrderOperation {
 
         // Create and save order
         Order order = new Order(orderId, customerId, productId, product.getPrice());
+        order.setCreateTime(createTime);
+        // The binary store persists the order itself when it is added
+        if (binaryStore == null && !flusher.submit(OrderJournal.format(order))) {
+            return false;
+        }
+        if (customerIndexBuilt) {
+            customerIndex.append(customerId, orders.size());
+        }
+        long sequence = orderSequence.append();
+        if (orderIndexesBuilt) {
+            indexOrder(customerId, productId, order.getPrice(), createTime, sequence);
+        }
+        if (rollupCube != null) {
+            rollupCube.add(productId, order.getPrice(), createTime);
+        }
+        spendRollup.add(customerId, productId, order.getPrice(), createTime);
+        if (sketchesBuilt) {
+            sketches.add(customerId, productId, createTime);
+        }
         orders.add(order);
-        saveOrders();
+        return true;
+    }
+
+    /**
+     * Places one order per product for a customer as a single all-or-nothing
+     * commit. Every product is looked up once and the order IDs are allocated
+     * together; if any product does not exist, no order is created. The cart
+     * is journaled as one batch between begin and commit markers (or, in the
+     * binary store, made visible by a single count update), so it reaches disk
+     * entirely or not at all. Under a write-behind policy true means the cart
+     * was accepted; it is written with the next flush.
+     * @param customerId ID of the customer placing the orders
+     * @param productIds IDs of the products ordered, one order per entry
+     * @return true if every order was created, false if none were
+     */
+    public boolean createOrders(String customerId, List<String> productIds) {
+        if (productIds == null || productIds.isEmpty()) {
+            return false;
+        }
+        Map<String, Product> products = new HashMap<>();
+        for (String productId : productIds) {
+            if (!products.containsKey(productId)) {
+                Product product = productOperation.getProductById(productId);
+                if (product == null) {
+                    return false;
+                }
+                products.put(productId, product);
+            }
+        }
+
+        List<String> orderIds = generateUniqueOrderIds(productIds.size());
+        LocalDateTime createTime = LocalDateTime.now();
+        List<Order> cart = new ArrayList<>(productIds.size());
+        for (int i = 0; i < productIds.size(); i++) {
+            String productId = productIds.get(i);
+            Order order = new Order(orderIds.get(i), customerId, productId, products.get(productId).getPrice());
+            order.setCreateTime(createTime);
+            cart.add(order);
+        }
+        // The binary store persists the orders itself when they are added
+        if (binaryStore == null && !flusher.submit(OrderJournal.formatBatch(cart))) {
+            return false;
+        }
+        for (int i = 0; i < cart.size(); i++) {
+            if (customerIndexBuilt) {
+                customerIndex.append(customerId, orders.size() + i);
+            }
+            long sequence = orderSequence.append();
+            Order order = cart.get(i);
+            if (orderIndexesBuilt) {
+                indexOrder(customerId, order.getProductId(), order.getPrice(), createTime, sequence);
+            }
+            if (rollupCube != null) {
+                rollupCube.add(order.getProductId(), order.getPrice(), createTime);
+            }
+            spendRollup.add(customerId, order.getProductId(), order.getPrice(), createTime);
+            if (sketchesBuilt) {
+                sketches.add(customerId, order.getProductId(), createTime);
+            }
+        }
+        orders.addAll(cart);
         return true;
     }
 
     public boolean deleteOrder(String orderId) {
-        boolean removed = orders.removeIf(o -> o.getOrderId().equals(orderId));
-        if (removed) {
-            usedOrderIds.remove(orderId);
-            saveOrders();
+        Order removed = null;
+        int index = indexOfOrder(orderId);
+        if (index >= 0) {
+            removed = orders.remove(index);
+            if (customerIndexBuilt) {
+                customerIndex.remove(removed.getCustomerId(), index);
+            }
+            if (orderIndexesBuilt) {
+                unindexOrder(removed, orderSequence.get(index));
+            }
+            if (rollupCube != null) {
+                rollupCube.remove(removed.getProductId(), removed.getPrice(), removed.getCreateDateTime());
+            }
+            spendRollup.remove(removed.getCustomerId(), removed.getProductId(), removed.getPrice(),
+                removed.getCreateDateTime());
+            orderSequence.remove(index);
+        }
+        if (removed == null) {
+            return false;
+        }
+        if (binaryStore == null) {
+            flusher.submit(OrderJournal.tombstone(removed));
+            // Compaction would move the records the paged store has indexed; it compacts when opened instead
+            if (pagedStore == null) {
+                flusher.compactIfNeeded(orders);
+            }
+        }
+        return true;
+    }
+
+    // The columnar store compares packed IDs instead of building an Order per row
+    private int indexOfOrder(String orderId) {
+        if (columnarStore != null) {
+            return columnarStore.indexOfOrderId(orderId);
+        }
+        for (int i = 0; i < orders.size(); i++) {
+            if (orders.get(i).getOrderId().equals(orderId)) {
+                return i;
+            }
         }
-        return removed;
+        return -1;
     }
 
     public OrderListResult getOrderList(String customerId, int pageNumber) {
-        List<Order> filteredOrders;
+        return getOrderPage(customerId, (pageNumber - 1) * ITEMS_PER_PAGE, pageNumber);
+    }
+
+    /**
+     * Retrieve the page of orders that follows a cursor. Resuming from a
+     * cursor costs the same on any page, and the page starts right after the
+     * last order already returned even if orders were created or deleted since.
+     * @param customerId Only list this customer's orders; null or empty for all orders
+     * @param cursor Continuation token from a previous OrderListResult, or null for the first page
+     * @return An OrderListResult containing the page and the cursor for the next one
+     * @throws IllegalArgumentException if the cursor is not a valid order cursor
+     */
+    public OrderListResult getOrderList(String customerId, String cursor) {
+        PageCursor position = PageCursor.decode("order", cursor);
+        if (position == null) {
+            return getOrderPage(customerId, 0, 1);
+        }
+        int listPosition = orderSequence.positionAfter(position.getLastSequence());
+        int startIndex = listPosition;
         if (customerId != null && !customerId.isEmpty()) {
-            filteredOrders = orders.stream()
-                    .filter(o -> o.getCustomerId().equals(customerId))
-                    .collect(Collectors.toList());
-        } else {
-            filteredOrders = new ArrayList<>(orders);
+            ensureCustomerIndex();
+            startIndex = customerIndex.countBefore(customerId, listPosition);
         }
+        return getOrderPage(customerId, startIndex, position.getNextPage());
+    }
 
-        int startIndex = (pageNumber - 1) * ITEMS_PER_PAGE;
-        int endIndex = Math.min(startIndex + ITEMS_PER_PAGE, filteredOrders.size());
-        int totalPages = (int) Math.ceil((double) filteredOrders.size() / ITEMS_PER_PAGE);
-
-        List<Order> pageOrders = startIndex < filteredOrders.size() 
-            ? filteredOrders.subList(startIndex, endIndex)
-            : new ArrayList<>();
+    // Reads just the orders on one page, through the customer index when filtering,
+    // so only those orders are read from the binary, paged or columnar store
+    private OrderListResult getOrderPage(String customerId, int startIndex, int pageNumber) {
+        boolean filtered = customerId != null && !customerId.isEmpty();
+        if (filtered) {
+            ensureCustomerIndex();
+        }
+        int total = filtered ? customerIndex.count(customerId) : orders.size();
+        int totalPages = (int) Math.ceil((double) total / ITEMS_PER_PAGE);
+        int[] positions;
+        if (filtered) {
+            positions = customerIndex.positions(customerId, startIndex, startIndex + ITEMS_PER_PAGE);
+        } else {
+            int from = Math.max(0, startIndex);
+            positions = new int[Math.max(0, Math.min(startIndex + ITEMS_PER_PAGE, total) - from)];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = from + i;
+            }
+        }
 
-        return new OrderListResult(pageOrders, pageNumber, totalPages);
+        List<Order> pageOrders = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            pageOrders.add(orders.get(position));
+        }
+        String nextCursor = null;
+        if (positions.length > 0 && Math.max(0, startIndex) + positions.length < total) {
+            nextCursor = PageCursor.encode("order", orderSequence.get(positions[positions.length - 1]), pageNumber + 1);
+        }
+        return new OrderListResult(pageOrders, pageNumber, totalPages, nextCursor);
     }
 
     public void generateTestOrderData() {
@@ -114,99 +323,684 @@ public class OrderOperation {
                 int minute = ThreadLocalRandom.current().nextInt(0, 60);
                 
                 LocalDateTime orderTime = LocalDateTime.of(year, month, day, hour, minute);
-                String createTime = orderTime.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-                
-                createOrder(customerId, productId);
+
+                createOrder(customerId, productId, orderTime);
             }
         }
     }
 
     public void generateAllTop10BestSellersFigure() {
-        // Count product occurrences
-        Map<String, Long> productCounts = orders.stream()
-                .collect(Collectors.groupingBy(
-                    Order::getProductId,
-                    Collectors.counting()
-                ));
-
-        // Sort by count in descending order and get top 10
-        List<Map.Entry<String, Long>> top10 = productCounts.entrySet().stream()
-                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
-                .limit(10)
-                .collect(Collectors.toList());
+        // Read off the leaderboard instead of counting every order
+        Map<String, Long> top10 = getTopSellersByCount(10);
+        Map<String, Double> top10ByRevenue = getTopSellersByRevenue(10);
 
         // Generate simple text-based chart
         try (PrintWriter writer = new PrintWriter(new FileWriter("top10_bestsellers.txt"))) {
             writer.println("Top 10 Best-Selling Products");
             writer.println("===========================");
             
-            for (Map.Entry<String, Long> entry : top10) {
+            for (Map.Entry<String, Long> entry : top10.entrySet()) {
                 String productId = entry.getKey();
                 long count = entry.getValue();
                 String bar = "=".repeat((int) (count / 10)); // Scale the bars
                 writer.printf("%s: %s (%d orders)%n", productId, bar, count);
             }
+
+            writer.println();
+            writer.println("Top 10 Products by Revenue");
+            writer.println("==========================");
+            double highest = top10ByRevenue.isEmpty() ? 0 : top10ByRevenue.values().iterator().next();
+            for (Map.Entry<String, Double> entry : top10ByRevenue.entrySet()) {
+                double revenue = entry.getValue();
+                // Scale the bars to the highest revenue
+                String bar = "=".repeat(highest > 0 ? (int) (revenue / highest * 50) : 0);
+                writer.printf("%s: %s ($%.2f)%n", entry.getKey(), bar, revenue);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Units and revenue of the orders placed on one day, read from the rollup cube in constant time.
+     * @param day The day
+     * @param category Only count this category; null for every category
+     * @param productId Only count this product; null for every product
+     * @return The units and revenue
+     */
+    public OrderRollup getDailyRollup(LocalDate day, String category, String productId) {
+        ensureRollupCube();
+        return rollupCube.day(day, category, productId);
+    }
+
+    /**
+     * Units and revenue of the orders placed in one month, read from the rollup cube in constant time.
+     * @param month The month
+     * @param category Only count this category; null for every category
+     * @param productId Only count this product; null for every product
+     * @return The units and revenue
+     */
+    public OrderRollup getMonthlyRollup(YearMonth month, String category, String productId) {
+        ensureRollupCube();
+        return rollupCube.month(month, category, productId);
+    }
+
+    /**
+     * Units and revenue of every order, read from the rollup cube in constant time.
+     * @param category Only count this category; null for every category
+     * @param productId Only count this product; null for every product
+     * @return The units and revenue
+     */
+    public OrderRollup getTotalRollup(String category, String productId) {
+        ensureRollupCube();
+        return rollupCube.total(category, productId);
+    }
+
+    // Identifies the orders a saved rollup cube was built from
+    private String lastOrderId() {
+        if (orders.isEmpty()) {
+            return null;
+        }
+        int last = orders.size() - 1;
+        if (binaryStore != null) {
+            return binaryStore.getOrderId(last);
+        }
+        if (columnarStore != null) {
+            return columnarStore.getOrderId(last);
+        }
+        return orders.get(last).getOrderId();
+    }
+
+    /**
+     * Writes a customer's monthly spend and order count and their spend by
+     * product category to consumption_&lt;customer ID&gt;.txt. The figures are read
+     * from the customer's rollups, not from the orders.
+     * @param customerId The customer
+     */
+    public void generateSingleCustomerConsumptionFigure(String customerId) {
+        Map<YearMonth, Double> monthlySpend = getMonthlyConsumption(customerId);
+        Map<YearMonth, Long> monthlyOrders = getMonthlyOrderCounts(customerId);
+        Map<String, Double> byCategory = getConsumptionByCategory(customerId);
+
+        try (PrintWriter writer = new PrintWriter(new FileWriter("consumption_" + customerId + ".txt"))) {
+            writer.println("Monthly Consumption of " + customerId);
+            writer.println("==============================");
+            double highest = monthlySpend.values().stream().mapToDouble(Double::doubleValue).max().orElse(0);
+            for (Map.Entry<YearMonth, Double> entry : monthlySpend.entrySet()) {
+                double spend = entry.getValue();
+                // Scale the bars to the highest month
+                String bar = "=".repeat(highest > 0 ? (int) (spend / highest * 50) : 0);
+                writer.printf("%s: %s ($%.2f, %d orders)%n",
+                    entry.getKey(), bar, spend, monthlyOrders.get(entry.getKey()));
+            }
+
+            writer.println();
+            writer.println("Consumption by Category");
+            writer.println("=======================");
+            for (Map.Entry<String, Double> entry : byCategory.entrySet()) {
+                writer.printf("%s: $%.2f%n", entry.getKey(), entry.getValue());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @param customerId The customer
+     * @return The customer's spend per month, in month order
+     */
+    public Map<YearMonth, Double> getMonthlyConsumption(String customerId) {
+        loadSpendRollup(customerId);
+        return spendRollup.monthlySpend(customerId);
+    }
+
+    /**
+     * @param customerId The customer
+     * @return The customer's number of orders per month, in month order
+     */
+    public Map<YearMonth, Long> getMonthlyOrderCounts(String customerId) {
+        loadSpendRollup(customerId);
+        return spendRollup.monthlyOrderCounts(customerId);
+    }
+
+    /**
+     * @param customerId The customer
+     * @return The customer's spend per product category, highest first
+     */
+    public Map<String, Double> getConsumptionByCategory(String customerId) {
+        loadSpendRollup(customerId);
+        return spendRollup.spendByCategory(customerId);
+    }
+
+    // Builds the customer's rollup from their orders only, found through the customer index
+    private void loadSpendRollup(String customerId) {
+        ensureCustomerIndex();
+        spendRollup.load(customerId, orderSource(),
+            customerIndex.positions(customerId, 0, customerIndex.count(customerId)));
+    }
+
+    /**
+     * Writes every statistics figure: the best sellers, revenue by category,
+     * revenue by month, order count by customer and the average basket. All
+     * but the best sellers come from a single parallel pass over the orders.
+     */
+    public void generateAllStatisticsFigures() {
+        generateAllTop10BestSellersFigure();
+        OrderStatistics statistics = getOrderStatistics();
+
+        try (PrintWriter writer = new PrintWriter(new FileWriter("revenue_by_category.txt"))) {
+            writer.println("Revenue by Category");
+            writer.println("===================");
+            statistics.getRevenueByCategory().entrySet().stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                .forEach(entry -> writer.printf("%s: $%.2f%n", entry.getKey(), entry.getValue()));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        try (PrintWriter writer = new PrintWriter(new FileWriter("revenue_by_month.txt"))) {
+            writer.println("Revenue by Month");
+            writer.println("================");
+            for (Map.Entry<YearMonth, Double> entry : statistics.getRevenueByMonth().entrySet()) {
+                writer.printf("%s: $%.2f%n", entry.getKey(), entry.getValue());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        try (PrintWriter writer = new PrintWriter(new FileWriter("orders_by_customer.txt"))) {
+            writer.println("Orders by Customer");
+            writer.println("==================");
+            statistics.getOrderCountByCustomer().entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .forEach(entry -> writer.printf("%s: %d orders%n", entry.getKey(), entry.getValue()));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        if (sketches != null) {
+            generateApproximateStatisticsFigure();
+        }
+
+        try (PrintWriter writer = new PrintWriter(new FileWriter("average_basket.txt"))) {
+            writer.println("Average Basket");
+            writer.println("==============");
+            writer.printf("Orders: %d%n", statistics.getOrderCount());
+            writer.printf("Baskets: %d%n", statistics.getBasketCount());
+            writer.printf("Average basket value: $%.2f%n", statistics.getAverageBasketValue());
+            writer.printf("Average items per basket: %.2f%n", statistics.getAverageBasketSize());
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    // Estimates with their error bounds, from the sketches only
+    private void generateApproximateStatisticsFigure() {
+        ensureSketches();
+        try (PrintWriter writer = new PrintWriter(new FileWriter("approximate_statistics.txt"))) {
+            writer.println("Distinct Customers per Product (approximate)");
+            writer.println("============================================");
+            for (String productId : sketches.products()) {
+                writer.println(sketches.distinctCustomers(productId));
+            }
+
+            writer.println();
+            writer.println("Top 10 Products in the Last Hour (approximate)");
+            writer.println("==============================================");
+            for (ApproximateCount count : getApproximateHeavyHitters(10)) {
+                writer.println(count);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return true if the application was started with -Dorders.sketches=true
+     */
+    public boolean isApproximateStatisticsEnabled() {
+        return sketches != null;
+    }
+
+    /**
+     * Estimates how many distinct customers ordered a product, from a
+     * HyperLogLog sketch instead of the orders.
+     * @param productId The product
+     * @return The estimate and its error bound, or null if approximate statistics are not enabled
+     */
+    public ApproximateCount getApproximateDistinctCustomers(String productId) {
+        ensureSketches();
+        return sketches == null ? null : sketches.distinctCustomers(productId);
+    }
+
+    /**
+     * Estimates the most ordered products of the last hour, from Count-Min
+     * sketches instead of the orders. The hour is measured in five-minute steps.
+     * @param limit Number of products to return, at most 100
+     * @return The estimates and their error bounds, highest first; empty if approximate statistics are not enabled
+     */
+    public List<ApproximateCount> getApproximateHeavyHitters(int limit) {
+        ensureSketches();
+        return sketches == null ? new ArrayList<>() : sketches.heavyHitters(limit, LocalDateTime.now());
+    }
+
+    // -Dorders.sketchDistinctError, -Dorders.sketchCountError and -Dorders.sketchConfidence set the error bounds
+    private static OrderSketches createSketches() {
+        if (!Boolean.getBoolean("orders.sketches")) {
+            return null;
+        }
+        try {
+            return new OrderSketches(
+                Double.parseDouble(System.getProperty("orders.sketchDistinctError", "0.02")),
+                Double.parseDouble(System.getProperty("orders.sketchCountError", "0.001")),
+                Double.parseDouble(System.getProperty("orders.sketchConfidence", "0.99")));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid sketch settings, approximate statistics are disabled: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Computes revenue by category and by month, order count by customer and
+     * basket totals in one pass over the orders on the common fork-join pool.
+     * @return The statistics
+     */
+    public OrderStatistics getOrderStatistics() {
+        return OrderAggregator.aggregate(orderSource(), productOperation, ForkJoinPool.commonPool());
+    }
+
+    // The binary and columnar stores are read field by field instead of building Orders
+    private OrderAggregator.OrderSource orderSource() {
+        if (binaryStore != null) {
+            return binaryStore;
+        }
+        if (columnarStore != null) {
+            return columnarStore;
+        }
+        return OrderAggregator.of(orders);
+    }
+
+    /**
+     * The products with the most orders, read from the running sales totals.
+     * @param limit Number of products to return
+     * @return Order count per product, highest first
+     */
+    public Map<String, Long> getTopSellersByCount(int limit) {
+        ensureOrderIndexes();
+        return leaderboard.topByCount(limit);
+    }
+
+    /**
+     * The products with the highest revenue, read from the running sales totals.
+     * @param limit Number of products to return
+     * @return Revenue per product, highest first
+     */
+    public Map<String, Double> getTopSellersByRevenue(int limit) {
+        ensureOrderIndexes();
+        return leaderboard.topByRevenue(limit);
+    }
+
     public void deleteAllOrders() {
         orders.clear();
-        usedOrderIds.clear();
-        saveOrders();
+        customerIndex.clear();
+        customerIndexBuilt = true;
+        orderSequence.clear();
+        timeIndex.clear();
+        leaderboard.clear();
+        spendRollup.clear();
+        if (rollupCube != null) {
+            rollupCube.clear();
+        }
+        if (sketches != null) {
+            sketches.clear();
+            sketchesBuilt = true;
+        }
+        if (binaryStore == null) {
+            flusher.reset();
+        }
     }
 
-    private void loadOrders() {
-        try (BufferedReader reader = new BufferedReader(new FileReader(ORDERS_FILE))) {
-            String line;
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length >= 4) {
-                    String orderId = parts[0];
-                    String customerId = parts[1];
-                    String productId = parts[2];
-                    double price = 0.0;
-                    LocalDateTime createTime = LocalDateTime.now();
-                    try {
-                        // Try to parse price as a double
-                        price = Double.parseDouble(parts[3]);
-                        // If there is a 5th part, try to parse createTime
-                        if (parts.length >= 5) {
-                            createTime = LocalDateTime.parse(parts[4], formatter);
-                        }
-                    } catch (NumberFormatException e) {
-                        // If not a double, treat as createTime and try to parse price from 5th part
-                        createTime = LocalDateTime.parse(parts[3], formatter);
-                        if (parts.length >= 5) {
-                            price = Double.parseDouble(parts[4]);
-                        }
-                    }
-                    Order order = new Order(orderId, customerId, productId, price);
-                    order.setCreateTime(createTime);
-                    orders.add(order);
-                    usedOrderIds.add(order.getOrderId());
-                }
+    /**
+     * Replaces the durability policy. Orders queued under the old policy are flushed first.
+     * Has no effect when orders are kept in the binary store, which forces every write to disk.
+     * @param policy The new policy
+     */
+    public void setDurabilityPolicy(DurabilityPolicy policy) {
+        if (binaryStore != null) {
+            return;
+        }
+        flusher.close();
+        flusher = new OrderFlusher(journal, policy);
+    }
+
+    public DurabilityPolicy getDurabilityPolicy() {
+        return binaryStore != null ? DurabilityPolicy.everyWrite() : flusher.getPolicy();
+    }
+
+    /**
+     * Writes every order accepted so far to disk before returning.
+     * @return true if nothing is left pending
+     */
+    public boolean flush() {
+        if (binaryStore != null) {
+            binaryStore.force();
+            return true;
+        }
+        return flusher.flush();
+    }
+
+    /**
+     * Flushes pending orders and stops the background flusher.
+     */
+    public void close() {
+        if (rollupCube != null) {
+            rollupCube.save(orders.size(), lastOrderId());
+        }
+        if (binaryStore != null) {
+            binaryStore.close();
+        } else {
+            flusher.close();
+            if (pagedStore != null) {
+                pagedStore.close();
             }
-        } catch (IOException e) {
-            // File might not exist yet, which is okay
-            orders = new ArrayList<>();
-            usedOrderIds = new HashSet<>();
         }
     }
 
-    private void saveOrders() {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(ORDERS_FILE))) {
-            for (Order order : orders) {
-                writer.println(String.format("%s,%s,%s,%.2f",
-                    order.getOrderId(),
-                    order.getCustomerId(),
-                    order.getProductId(),
-                    order.getPrice()));
+    /**
+     * Describes how long the last startup load of data/orders.txt took.
+     * Printed at startup whenever -Dorders.loader is set, so the serial and
+     * parallel loaders can be compared.
+     * @return The load report, or an empty string if orders came from the binary store
+     */
+    public String getLoadReport() {
+        return loadReport;
+    }
+
+    /**
+     * Returns the orders created in a time range, oldest first, located
+     * through the time index instead of scanning the orders.
+     * @param from Start of the range, inclusive
+     * @param to End of the range, exclusive
+     * @return The orders created in the range
+     */
+    public List<Order> getOrdersBetween(LocalDateTime from, LocalDateTime to) {
+        return getOrdersBetween(null, from, to);
+    }
+
+    /**
+     * Returns one customer's orders created in a time range, oldest first.
+     * @param customerId Only include this customer's orders; null or empty for all orders
+     * @param from Start of the range, inclusive
+     * @param to End of the range, exclusive
+     * @return The orders created in the range
+     */
+    public List<Order> getOrdersBetween(String customerId, LocalDateTime from, LocalDateTime to) {
+        String key = timeIndexKey(customerId);
+        if (key == null || orderIndexesBuilt) {
+            ensureOrderIndexes();
+            return ordersBySequence(timeIndex.range(key, from, to, false, 0, Integer.MAX_VALUE));
+        }
+        List<Order> result = new ArrayList<>();
+        for (int position : customerPositionsByTime(key)) {
+            LocalDateTime createTime = createTimeAt(position);
+            if (!createTime.isBefore(from) && createTime.isBefore(to)) {
+                result.add(orders.get(position));
             }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the most recently created orders, newest first.
+     * @param customerId Only include this customer's orders; null or empty for all orders
+     * @param count Maximum number of orders to return
+     * @return The orders, newest first
+     */
+    public List<Order> getLatestOrders(String customerId, int count) {
+        String key = timeIndexKey(customerId);
+        if (key == null || orderIndexesBuilt) {
+            ensureOrderIndexes();
+            return ordersBySequence(timeIndex.range(key, LocalDateTime.MIN, LocalDateTime.MAX, true, 0, count));
+        }
+        return newestFirst(customerPositionsByTime(key), 0, count);
+    }
+
+    /**
+     * Retrieve one page of the order history in reverse chronological order.
+     * A customer's history is read through the customer index, so only that
+     * customer's orders are touched; the history of all orders is read from
+     * the newest end of the time index.
+     * @param customerId Only list this customer's orders; null or empty for all orders
+     * @param pageNumber The page number to retrieve
+     * @return An OrderListResult containing the page, current page, and total pages
+     */
+    public OrderListResult getOrderHistory(String customerId, int pageNumber) {
+        String key = timeIndexKey(customerId);
+        int skip = (pageNumber - 1) * ITEMS_PER_PAGE;
+        int total;
+        List<Order> pageOrders;
+        if (key == null || orderIndexesBuilt) {
+            ensureOrderIndexes();
+            total = timeIndex.count(key, LocalDateTime.MIN, LocalDateTime.MAX);
+            pageOrders = ordersBySequence(timeIndex.range(key, LocalDateTime.MIN, LocalDateTime.MAX,
+                true, skip, ITEMS_PER_PAGE));
+        } else {
+            int[] positions = customerPositionsByTime(key);
+            total = positions.length;
+            pageOrders = newestFirst(positions, skip, ITEMS_PER_PAGE);
+        }
+        return new OrderListResult(pageOrders, pageNumber, (int) Math.ceil((double) total / ITEMS_PER_PAGE));
+    }
+
+    private static String timeIndexKey(String customerId) {
+        return customerId == null || customerId.isEmpty() ? null : customerId;
+    }
+
+    // Positions of one customer's orders sorted by create time, ties in list order.
+    // Only that customer's orders are read, so the global indexes are not built
+    private int[] customerPositionsByTime(String customerId) {
+        ensureCustomerIndex();
+        int[] positions = customerIndex.positions(customerId, 0, customerIndex.count(customerId));
+        LocalDateTime[] times = new LocalDateTime[positions.length];
+        Integer[] sorted = new Integer[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            times[i] = createTimeAt(positions[i]);
+            sorted[i] = i;
+        }
+        // Stable, so orders created in the same instant keep their list order
+        Arrays.sort(sorted, Comparator.comparing(i -> times[i]));
+        int[] result = new int[positions.length];
+        for (int i = 0; i < sorted.length; i++) {
+            result[i] = positions[sorted[i]];
+        }
+        return result;
+    }
+
+    private List<Order> newestFirst(int[] positionsByTime, int skip, int limit) {
+        int end = positionsByTime.length - Math.max(0, skip);
+        List<Order> result = new ArrayList<>();
+        for (int i = end - 1; i >= 0 && result.size() < limit; i--) {
+            result.add(orders.get(positionsByTime[i]));
+        }
+        return result;
+    }
+
+    private LocalDateTime createTimeAt(int position) {
+        if (binaryStore != null) {
+            return binaryStore.getCreateTime(position);
+        }
+        if (columnarStore != null) {
+            return columnarStore.getCreateTime(position);
+        }
+        return orders.get(position).getCreateDateTime();
+    }
+
+    private List<Order> ordersBySequence(long[] sequences) {
+        List<Order> result = new ArrayList<>(sequences.length);
+        for (long sequence : sequences) {
+            int position = orderSequence.positionOf(sequence);
+            if (position >= 0) {
+                result.add(orders.get(position));
+            }
+        }
+        return result;
+    }
+
+    // Rebuilds the rollup cube from the order store; the paged store is read one page after another
+    private void ensureRollupCube() {
+        if (rollupCube == null) {
+            rollupCube = OrderRollupCube.build(ROLLUPS_FILE, orderSource(), productOperation, pagedStore == null);
+        }
+    }
+
+    // Adds every order loaded so far to the sketches, if they are enabled
+    private void ensureSketches() {
+        if (sketches == null || sketchesBuilt) {
+            return;
+        }
+        OrderAggregator.OrderSource source = orderSource();
+        for (int i = 0; i < source.size(); i++) {
+            sketches.add(source.getCustomerId(i), source.getProductId(i), source.getCreateTime(i));
+        }
+        sketchesBuilt = true;
+    }
+
+    // Indexes the customer of every order loaded so far; only the binary store opens without it
+    private void ensureCustomerIndex() {
+        if (customerIndexBuilt) {
+            return;
+        }
+        OrderAggregator.OrderSource source = orderSource();
+        for (int i = 0; i < source.size(); i++) {
+            customerIndex.append(source.getCustomerId(i), i);
+        }
+        customerIndexBuilt = true;
+    }
+
+    // Indexes the orders loaded so far; with the lazy loader this reads every page once
+    private void ensureOrderIndexes() {
+        if (orderIndexesBuilt) {
+            return;
+        }
+        for (int i = 0; i < orders.size(); i++) {
+            if (binaryStore != null) {
+                indexOrder(binaryStore.getCustomerId(i), binaryStore.getProductId(i), binaryStore.getPrice(i),
+                    binaryStore.getCreateTime(i), orderSequence.get(i));
+            } else if (columnarStore != null) {
+                indexOrder(columnarStore.getCustomerId(i), columnarStore.getProductId(i), columnarStore.getPrice(i),
+                    columnarStore.getCreateTime(i), orderSequence.get(i));
+            } else {
+                Order order = orders.get(i);
+                indexOrder(order.getCustomerId(), order.getProductId(), order.getPrice(),
+                    order.getCreateDateTime(), orderSequence.get(i));
+            }
+        }
+        orderIndexesBuilt = true;
+    }
+
+    // Records an order in the time index and the leaderboard
+    private void indexOrder(String customerId, String productId, double price,
+                            LocalDateTime createTime, long sequence) {
+        timeIndex.add(customerId, createTime, sequence);
+        leaderboard.add(productId, price);
+    }
+
+    private void unindexOrder(Order order, long sequence) {
+        timeIndex.remove(order.getCustomerId(), order.getCreateDateTime(), sequence);
+        leaderboard.remove(order.getProductId(), order.getPrice());
+    }
+
+    /**
+     * Returns the orders created in one calendar month.
+     * @param month The month
+     * @return The orders created in the month
+     */
+    public List<Order> getOrdersInMonth(YearMonth month) {
+        return getOrdersBetween(month.atDay(1).atStartOfDay(), month.plusMonths(1).atDay(1).atStartOfDay());
+    }
+
+    /**
+     * Converts the CSV order journal into the binary order store at data/orders.bin.
+     * The store is used instead of the CSV journal when the application is
+     * started with -Dorders.store=binary.
+     * @return Number of orders converted, or -1 if the conversion failed
+     */
+    public static int convertOrdersToBinary() {
+        try {
+            return BinaryOrderStore.write(
+                new PartitionedOrderJournal(DATA_DIRECTORY, ORDERS_FILE).replay(), ORDERS_BINARY_FILE);
         } catch (IOException e) {
             e.printStackTrace();
+            return -1;
+        }
+    }
+
+    private boolean openBinaryStore() {
+        try {
+            if (!new File(ORDERS_BINARY_FILE).exists()) {
+                BinaryOrderStore.write(journal.replay(), ORDERS_BINARY_FILE);
+            }
+            binaryStore = BinaryOrderStore.open(ORDERS_BINARY_FILE);
+        } catch (IOException e) {
+            System.err.println("Error opening binary order store, using the CSV journal: " + e.getMessage());
+            return false;
+        }
+        orders = binaryStore;
+        // No record is decoded here; the customer and order indexes are built on first use
+        for (int i = 0; i < binaryStore.size(); i++) {
+            orderSequence.append();
+        }
+        return true;
+    }
+
+    private void loadOrders() {
+        // -Dorders.loader=parallel parses the journal on the common fork-join pool
+        String loader = System.getProperty("orders.loader");
+        if ("lazy".equalsIgnoreCase(loader) && openPagedStore()) {
+            return;
+        }
+        boolean parallel = "parallel".equalsIgnoreCase(loader);
+        long start = System.nanoTime();
+        orders = parallel ? journal.replayParallel(ForkJoinPool.commonPool()) : journal.replay();
+        // -Dorders.store=columnar keeps the orders in primitive columns once loaded
+        for (int i = 0; i < orders.size(); i++) {
+            customerIndex.append(orders.get(i).getCustomerId(), i);
+            orderSequence.append();
+        }
+        customerIndexBuilt = true;
+        if ("columnar".equalsIgnoreCase(System.getProperty("orders.store"))) {
+            columnarStore = ColumnarOrderStore.of(orders);
+            orders = columnarStore;
+        }
+        ensureOrderIndexes();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        loadReport = String.format("Loaded %d orders in %.1f ms (%.0f records/sec, %s loader)",
+            orders.size(), seconds * 1000, seconds > 0 ? orders.size() / seconds : 0.0,
+            parallel ? "parallel" : "serial");
+        if (loader != null) {
+            System.out.println(loadReport);
         }
     }
-} 
\ No newline at end of file
+
+    // -Dorders.loader=lazy only indexes the journal; -Dorders.pageCache caps the pages kept parsed
+    private boolean openPagedStore() {
+        long start = System.nanoTime();
+        try {
+            pagedStore = PagedOrderStore.open(journal,
+                Integer.getInteger("orders.pageCache", PagedOrderStore.DEFAULT_CACHED_PAGES), customerIndex);
+        } catch (IOException e) {
+            System.err.println("Error indexing orders, loading them all instead: " + e.getMessage());
+            return false;
+        }
+        orders = pagedStore;
+        customerIndexBuilt = true;
+        for (int i = 0; i < pagedStore.size(); i++) {
+            orderSequence.append();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        loadReport = String.format("Indexed %d orders in %d pages in %.1f ms (lazy loader)",
+            pagedStore.size(), pagedStore.getPageCount(), seconds * 1000);
+        System.out.println(loadReport);
+        return true;
+    }
+}
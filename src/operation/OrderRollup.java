@@ -0,0 +1,23 @@
+package operation;
+
+public class OrderRollup {
+    private long units;
+    private double revenue;
+
+    /**
+     * @param units Number of orders in the group
+     * @param revenue Sum of their prices
+     */
+    public OrderRollup(long units, double revenue) {
+        this.units = units;
+        this.revenue = revenue;
+    }
+
+    public long getUnits() {
+        return units;
+    }
+
+    public double getRevenue() {
+        return revenue;
+    }
+}
@@ -0,0 +1,261 @@
+package operation;
+
+import model.Product;
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * Materialized rollup of units and revenue by time bucket, category and
+ * product. Every order is added to one cell per combination of a day, a
+ * month or all time with a product, its whole category or every category,
+ * so each grouping a dashboard asks for is already summed and is read with
+ * a single hash lookup, however many orders there are.
+ *
+ * The cube is saved to a text file next to the orders when the application
+ * closes. The file starts with the number of orders and the ID of the last
+ * order it covers; if those no longer match the order store, for example
+ * after a crash, or the file is missing, the cube is rebuilt from the store,
+ * with a parallel stream unless the store reads its orders page by page from
+ * disk. The category each product was counted under is
+ * saved with the cells, so an order deleted after its product left the
+ * catalog is still taken back from the right category.
+ */
+class OrderRollupCube {
+    private static final String HEADER_PREFIX = "#";
+    private static final String ALL = "*";
+    private static final String DAY = "D";
+    private static final String MONTH = "M";
+    private static final String TOTAL = "A";
+    private static final String CATEGORY = "C";
+    private static final String UNKNOWN_CATEGORY = "Unknown";
+
+    private final String path;
+    private final ProductOperation products;
+    private final Map<String, String> categoryByProduct = new ConcurrentHashMap<>();
+    private Map<String, Cell> cells = new HashMap<>();
+
+    private static class Cell {
+        long units;
+        double revenue;
+    }
+
+    private OrderRollupCube(String path, ProductOperation products) {
+        this.path = path;
+        this.products = products;
+    }
+
+    /**
+     * Loads the cube saved for an order store.
+     * @param path The cube file
+     * @param orderCount Number of orders in the store
+     * @param lastOrderId ID of the last order in the store, or null if it is empty
+     * @param products Product lookup table used to find each order's category
+     * @return The cube, or null if the saved cube is missing or does not match the store
+     */
+    static OrderRollupCube load(String path, int orderCount, String lastOrderId, ProductOperation products) {
+        OrderRollupCube cube = new OrderRollupCube(path, products);
+        return cube.load(header(orderCount, lastOrderId)) ? cube : null;
+    }
+
+    /**
+     * Builds the cube from every order in a store.
+     * @param path The cube file
+     * @param source The orders
+     * @param products Product lookup table used to find each order's category
+     * @param parallel false to read the orders one after another, for a store
+     *        that parses them page by page
+     * @return The cube
+     */
+    static OrderRollupCube build(String path, OrderAggregator.OrderSource source, ProductOperation products,
+                                 boolean parallel) {
+        OrderRollupCube cube = new OrderRollupCube(path, products);
+        cube.rebuild(source, parallel);
+        return cube;
+    }
+
+    /**
+     * Counts an order.
+     * @param productId The product ordered
+     * @param price The price the order was placed at
+     * @param createTime When the order was placed
+     */
+    synchronized void add(String productId, double price, LocalDateTime createTime) {
+        addToCells(cells, productId, price, createTime, 1);
+    }
+
+    /**
+     * Takes back an order counted by {@link #add}.
+     * @param productId The product of the deleted order
+     * @param price The price of the deleted order
+     * @param createTime When the deleted order was placed
+     */
+    synchronized void remove(String productId, double price, LocalDateTime createTime) {
+        addToCells(cells, productId, -price, createTime, -1);
+    }
+
+    synchronized void clear() {
+        cells.clear();
+    }
+
+    /**
+     * @param day The day
+     * @param category A category, or null for every category
+     * @param productId A product, or null for every product
+     * @return Units and revenue of the orders placed that day
+     */
+    synchronized OrderRollup day(LocalDate day, String category, String productId) {
+        return rollup(DAY, day.toString(), category, productId);
+    }
+
+    /**
+     * @param month The month
+     * @param category A category, or null for every category
+     * @param productId A product, or null for every product
+     * @return Units and revenue of the orders placed that month
+     */
+    synchronized OrderRollup month(YearMonth month, String category, String productId) {
+        return rollup(MONTH, month.toString(), category, productId);
+    }
+
+    /**
+     * @param category A category, or null for every category
+     * @param productId A product, or null for every product
+     * @return Units and revenue of every order
+     */
+    synchronized OrderRollup total(String category, String productId) {
+        return rollup(TOTAL, ALL, category, productId);
+    }
+
+    /**
+     * Writes the cube to its file, replacing the previous one.
+     * @param orderCount Number of orders the cube covers
+     * @param lastOrderId ID of the last order it covers, or null if there are none
+     */
+    synchronized void save(int orderCount, String lastOrderId) {
+        Path target = Paths.get(path);
+        Path temp = Paths.get(path + ".tmp");
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(temp))) {
+            writer.println(header(orderCount, lastOrderId));
+            for (Map.Entry<String, String> entry : categoryByProduct.entrySet()) {
+                writer.println(CATEGORY + "," + entry.getKey() + "," + entry.getValue());
+            }
+            for (Map.Entry<String, Cell> entry : cells.entrySet()) {
+                writer.println(entry.getKey() + "," + entry.getValue().units + "," + entry.getValue().revenue);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private OrderRollup rollup(String level, String bucket, String category, String productId) {
+        // A product belongs to one category, so the product alone picks the cell
+        String key = productId != null ? key(level, bucket, ALL, productId)
+            : key(level, bucket, category != null ? category : ALL, ALL);
+        Cell cell = cells.get(key);
+        return cell == null ? new OrderRollup(0, 0.0) : new OrderRollup(cell.units, cell.revenue);
+    }
+
+    // Sums the orders into fresh cells, on the common fork-join pool with one map per worker if parallel
+    private void rebuild(OrderAggregator.OrderSource source, boolean parallel) {
+        IntStream positions = IntStream.range(0, source.size());
+        Map<String, Cell> rebuilt = (parallel ? positions.parallel() : positions).collect(
+            HashMap::new,
+            (partial, i) -> addToCells(partial, source.getProductId(i), source.getPrice(i),
+                source.getCreateTime(i), 1),
+            (left, right) -> right.forEach((key, cell) -> {
+                Cell sum = left.computeIfAbsent(key, k -> new Cell());
+                sum.units += cell.units;
+                sum.revenue += cell.revenue;
+            }));
+        synchronized (this) {
+            cells = rebuilt;
+        }
+    }
+
+    private boolean load(String expectedHeader) {
+        File file = new File(path);
+        if (!file.exists()) {
+            return false;
+        }
+        Map<String, Cell> loaded = new HashMap<>();
+        Map<String, String> categories = new HashMap<>();
+        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+            if (!expectedHeader.equals(in.readLine())) {
+                return false;
+            }
+            CsvRecordReader reader = new CsvRecordReader(in);
+            while (reader.next()) {
+                if (reader.fieldCount() == 3 && reader.fieldEquals(0, CATEGORY)) {
+                    categories.put(reader.field(1), reader.field(2));
+                    continue;
+                }
+                if (reader.fieldCount() < 6) {
+                    continue;
+                }
+                Cell cell = new Cell();
+                cell.units = reader.parseLong(4);
+                cell.revenue = reader.parseDouble(5);
+                loaded.put(key(reader.field(0), reader.field(1), reader.field(2), reader.field(3)), cell);
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Error loading order rollups, rebuilding them: " + e.getMessage());
+            return false;
+        }
+        cells = loaded;
+        categoryByProduct.putAll(categories);
+        return true;
+    }
+
+    private void addToCells(Map<String, Cell> target, String productId, double price,
+                            LocalDateTime createTime, int units) {
+        String category = categoryOf(productId);
+        String[][] buckets = {
+            {DAY, createTime.toLocalDate().toString()},
+            {MONTH, YearMonth.from(createTime).toString()},
+            {TOTAL, ALL}
+        };
+        for (String[] bucket : buckets) {
+            addToCell(target, key(bucket[0], bucket[1], ALL, productId), price, units);
+            addToCell(target, key(bucket[0], bucket[1], category, ALL), price, units);
+            addToCell(target, key(bucket[0], bucket[1], ALL, ALL), price, units);
+        }
+    }
+
+    private static void addToCell(Map<String, Cell> target, String key, double price, int units) {
+        Cell cell = target.computeIfAbsent(key, k -> new Cell());
+        cell.units += units;
+        cell.revenue += price;
+        if (cell.units == 0) {
+            target.remove(key);
+        }
+    }
+
+    // Remembered per product, "Unknown" included, so a deleted order is taken
+    // back from the category it was added to
+    private String categoryOf(String productId) {
+        return categoryByProduct.computeIfAbsent(productId, id -> {
+            Product product = products.getProductById(id);
+            return product == null ? UNKNOWN_CATEGORY : product.getCategory();
+        });
+    }
+
+    private static String key(String level, String bucket, String category, String productId) {
+        return level + "," + bucket + "," + category + "," + productId;
+    }
+
+    private static String header(int orderCount, String lastOrderId) {
+        return HEADER_PREFIX + orderCount + "," + (lastOrderId == null ? "" : lastOrderId);
+    }
+}
@@ -0,0 +1,149 @@
+package operation;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+/**
+ * Approximate order statistics in memory that does not grow with the
+ * number of orders: a HyperLogLog per product for the number of distinct
+ * customers who ordered it, and Count-Min sketches over the last hour for
+ * the most ordered products.
+ *
+ * The hour is covered by SLOTS time slots, each with its own Count-Min
+ * sketch and a bounded set of candidate products, so the window moves in
+ * steps of one slot and a query spans the current slot and the ones before
+ * it. The heaviest candidates are picked with a min-heap of the requested
+ * size. Sketches only count; deleted orders are not taken back.
+ */
+class OrderSketches {
+    private static final int WINDOW_MINUTES = 60;
+    private static final int SLOTS = 12;
+    private static final int SLOT_MINUTES = WINDOW_MINUTES / SLOTS;
+    // Candidate heavy hitters remembered per slot
+    private static final int CANDIDATES = 100;
+    // The HyperLogLog bound is two standard errors
+    private static final double DISTINCT_CONFIDENCE = 0.95;
+
+    private final int precision;
+    private final double countError;
+    private final double confidence;
+    private final Map<String, HyperLogLog> customersByProduct = new HashMap<>();
+    private final Slot[] slots = new Slot[SLOTS];
+
+    private class Slot {
+        final long number;
+        // Each slot fails with at most 1/SLOTS of the allowed probability, so a whole window meets the confidence
+        final CountMinSketch sketch = new CountMinSketch(countError, (1 - confidence) / SLOTS);
+        final Map<String, Long> candidates = new HashMap<>();
+
+        Slot(long number) {
+            this.number = number;
+        }
+    }
+
+    /**
+     * @param distinctError Relative standard error of the distinct customer counts, such as 0.02
+     * @param countError Count-Min error as a fraction of the orders in a slot, such as 0.001
+     * @param confidence Probability that a heavy hitter count is within its bound, such as 0.99
+     */
+    OrderSketches(double distinctError, double countError, double confidence) {
+        if (distinctError <= 0 || countError <= 0 || confidence <= 0 || confidence >= 1) {
+            throw new IllegalArgumentException("Error bounds must be positive and confidence between 0 and 1");
+        }
+        precision = HyperLogLog.precisionFor(distinctError);
+        this.countError = countError;
+        this.confidence = confidence;
+    }
+
+    /**
+     * Counts an order.
+     * @param customerId The customer who placed the order
+     * @param productId The product ordered
+     * @param createTime When the order was placed
+     */
+    synchronized void add(String customerId, String productId, LocalDateTime createTime) {
+        customersByProduct.computeIfAbsent(productId, p -> new HyperLogLog(precision)).add(customerId);
+
+        long number = slotNumber(createTime);
+        int index = (int) Math.floorMod(number, (long) SLOTS);
+        Slot slot = slots[index];
+        if (slot == null || slot.number < number) {
+            slot = new Slot(number);
+            slots[index] = slot;
+        } else if (slot.number > number) {
+            // Older than every slot still kept
+            return;
+        }
+        slot.sketch.add(productId);
+        slot.candidates.put(productId, slot.sketch.estimate(productId));
+        if (slot.candidates.size() > CANDIDATES) {
+            String lightest = Collections.min(slot.candidates.entrySet(), Map.Entry.comparingByValue()).getKey();
+            slot.candidates.remove(lightest);
+        }
+    }
+
+    synchronized void clear() {
+        customersByProduct.clear();
+        Arrays.fill(slots, null);
+    }
+
+    /**
+     * @param productId The product
+     * @return Estimated number of distinct customers who ordered it
+     */
+    synchronized ApproximateCount distinctCustomers(String productId) {
+        HyperLogLog sketch = customersByProduct.get(productId);
+        long estimate = sketch == null ? 0 : sketch.estimate();
+        long bound = (long) Math.ceil(2 * HyperLogLog.relativeError(precision) * estimate);
+        return new ApproximateCount(productId, estimate, bound, DISTINCT_CONFIDENCE);
+    }
+
+    /**
+     * @return IDs of every product counted so far, sorted
+     */
+    synchronized List<String> products() {
+        List<String> products = new ArrayList<>(customersByProduct.keySet());
+        Collections.sort(products);
+        return products;
+    }
+
+    /**
+     * The most ordered products in the last hour.
+     * @param limit Number of products to return, at most CANDIDATES
+     * @param now The end of the hour
+     * @return The products with estimated order counts, highest first
+     */
+    synchronized List<ApproximateCount> heavyHitters(int limit, LocalDateTime now) {
+        long current = slotNumber(now);
+        List<Slot> live = new ArrayList<>();
+        long bound = 0;
+        Set<String> candidates = new HashSet<>();
+        for (Slot slot : slots) {
+            if (slot != null && slot.number > current - SLOTS && slot.number <= current) {
+                live.add(slot);
+                bound += slot.sketch.errorBound();
+                candidates.addAll(slot.candidates.keySet());
+            }
+        }
+        PriorityQueue<ApproximateCount> heaviest = new PriorityQueue<>(
+            Comparator.comparingLong(ApproximateCount::getEstimate));
+        for (String productId : candidates) {
+            long estimate = 0;
+            for (Slot slot : live) {
+                estimate += slot.sketch.estimate(productId);
+            }
+            heaviest.add(new ApproximateCount(productId, estimate, bound, confidence));
+            if (heaviest.size() > limit) {
+                heaviest.poll();
+            }
+        }
+        List<ApproximateCount> result = new ArrayList<>(heaviest);
+        result.sort(Comparator.comparingLong(ApproximateCount::getEstimate).reversed());
+        return result;
+    }
+
+    private static long slotNumber(LocalDateTime time) {
+        return Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), SLOT_MINUTES * 60L);
+    }
+}
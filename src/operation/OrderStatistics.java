@@ -0,0 +1,71 @@
+package operation;
+
+import java.time.YearMonth;
+import java.util.Collections;
+import java.util.Map;
+
+public class OrderStatistics {
+    private Map<String, Double> revenueByCategory;
+    private Map<YearMonth, Double> revenueByMonth;
+    private Map<String, Long> orderCountByCustomer;
+    private long orderCount;
+    private long basketCount;
+    private double revenue;
+
+    /**
+     * @param revenueByCategory Revenue per product category
+     * @param revenueByMonth Revenue per calendar month, in month order
+     * @param orderCountByCustomer Number of orders per customer ID
+     * @param orderCount Number of orders
+     * @param basketCount Number of baskets, an order or a cart of orders placed together
+     * @param revenue Total revenue
+     */
+    public OrderStatistics(Map<String, Double> revenueByCategory, Map<YearMonth, Double> revenueByMonth,
+                           Map<String, Long> orderCountByCustomer, long orderCount, long basketCount,
+                           double revenue) {
+        this.revenueByCategory = Collections.unmodifiableMap(revenueByCategory);
+        this.revenueByMonth = Collections.unmodifiableMap(revenueByMonth);
+        this.orderCountByCustomer = Collections.unmodifiableMap(orderCountByCustomer);
+        this.orderCount = orderCount;
+        this.basketCount = basketCount;
+        this.revenue = revenue;
+    }
+
+    public Map<String, Double> getRevenueByCategory() {
+        return revenueByCategory;
+    }
+
+    public Map<YearMonth, Double> getRevenueByMonth() {
+        return revenueByMonth;
+    }
+
+    public Map<String, Long> getOrderCountByCustomer() {
+        return orderCountByCustomer;
+    }
+
+    public long getOrderCount() {
+        return orderCount;
+    }
+
+    public long getBasketCount() {
+        return basketCount;
+    }
+
+    public double getRevenue() {
+        return revenue;
+    }
+
+    /**
+     * @return Average revenue per basket, or 0 if there are no orders
+     */
+    public double getAverageBasketValue() {
+        return basketCount == 0 ? 0.0 : revenue / basketCount;
+    }
+
+    /**
+     * @return Average number of orders per basket, or 0 if there are no orders
+     */
+    public double getAverageBasketSize() {
+        return basketCount == 0 ? 0.0 : (double) orderCount / basketCount;
+    }
+}
@@ -0,0 +1,163 @@
+package operation;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+/**
+ * Orders sorted by create time, over all customers and per customer. Each
+ * entry is a create time, as nanoseconds since the epoch in UTC, with the
+ * order's insertion sequence number as a tie-breaker, held in primitive
+ * arrays. A time range is located with two binary searches and read in
+ * either direction, so a query costs O(log n + results).
+ * Entries refer to orders by sequence number rather than list position,
+ * so removing an order does not renumber the others.
+ */
+class OrderTimeIndex {
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private final Entries all = new Entries();
+    private final Map<String, Entries> byCustomer = new HashMap<>();
+
+    // (time, sequence) pairs in ascending order
+    private static class Entries {
+        long[] times = new long[16];
+        long[] sequences = new long[16];
+        int size;
+
+        void insert(long time, long sequence) {
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                sequences = Arrays.copyOf(sequences, size * 2);
+            }
+            // New orders are usually the latest, so this is normally an append
+            int index = size;
+            if (size > 0 && compare(size - 1, time, sequence) > 0) {
+                index = search(time, sequence);
+                System.arraycopy(times, index, times, index + 1, size - index);
+                System.arraycopy(sequences, index, sequences, index + 1, size - index);
+            }
+            times[index] = time;
+            sequences[index] = sequence;
+            size++;
+        }
+
+        boolean delete(long time, long sequence) {
+            int index = search(time, sequence);
+            if (index == size || times[index] != time || sequences[index] != sequence) {
+                return false;
+            }
+            System.arraycopy(times, index + 1, times, index, size - index - 1);
+            System.arraycopy(sequences, index + 1, sequences, index, size - index - 1);
+            size--;
+            return true;
+        }
+
+        // Index of the first entry not before (time, sequence)
+        int search(long time, long sequence) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (compare(mid, time, sequence) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private int compare(int index, long time, long sequence) {
+            int byTime = Long.compare(times[index], time);
+            return byTime != 0 ? byTime : Long.compare(sequences[index], sequence);
+        }
+    }
+
+    /**
+     * @param customerId The customer who placed the order
+     * @param createTime When the order was placed
+     * @param sequence The order's insertion sequence number
+     */
+    synchronized void add(String customerId, LocalDateTime createTime, long sequence) {
+        long time = key(createTime);
+        all.insert(time, sequence);
+        byCustomer.computeIfAbsent(customerId, c -> new Entries()).insert(time, sequence);
+    }
+
+    /**
+     * @param customerId The customer who placed the removed order
+     * @param createTime When the removed order was placed
+     * @param sequence The removed order's insertion sequence number
+     */
+    synchronized void remove(String customerId, LocalDateTime createTime, long sequence) {
+        long time = key(createTime);
+        all.delete(time, sequence);
+        Entries entries = byCustomer.get(customerId);
+        if (entries != null && entries.delete(time, sequence) && entries.size == 0) {
+            byCustomer.remove(customerId);
+        }
+    }
+
+    synchronized void clear() {
+        all.size = 0;
+        byCustomer.clear();
+    }
+
+    /**
+     * @param customerId Only count this customer's orders; null for all orders
+     * @param from Start of the range, inclusive
+     * @param to End of the range, exclusive
+     * @return Number of orders created in the range
+     */
+    synchronized int count(String customerId, LocalDateTime from, LocalDateTime to) {
+        Entries entries = entries(customerId);
+        if (entries == null) {
+            return 0;
+        }
+        return Math.max(0, entries.search(key(to), Long.MIN_VALUE) - entries.search(key(from), Long.MIN_VALUE));
+    }
+
+    /**
+     * Sequence numbers of a slice of the orders created in a time range.
+     * @param customerId Only include this customer's orders; null for all orders
+     * @param from Start of the range, inclusive
+     * @param to End of the range, exclusive
+     * @param newestFirst true to read the range from its latest order backwards
+     * @param skip Number of orders to skip in reading order
+     * @param limit Maximum number of orders to return
+     * @return The sequence numbers, in reading order
+     */
+    synchronized long[] range(String customerId, LocalDateTime from, LocalDateTime to,
+                              boolean newestFirst, int skip, int limit) {
+        Entries entries = entries(customerId);
+        if (entries == null) {
+            return new long[0];
+        }
+        int first = entries.search(key(from), Long.MIN_VALUE);
+        int end = entries.search(key(to), Long.MIN_VALUE);
+        int count = Math.max(0, Math.min(end - first - Math.max(0, skip), limit));
+        long[] result = new long[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = newestFirst
+                ? entries.sequences[end - 1 - Math.max(0, skip) - i]
+                : entries.sequences[first + Math.max(0, skip) + i];
+        }
+        return result;
+    }
+
+    private Entries entries(String customerId) {
+        return customerId == null ? all : byCustomer.get(customerId);
+    }
+
+    // Nanoseconds since the epoch in UTC, saturated for times a long cannot hold
+    private static long key(LocalDateTime time) {
+        long seconds = time.toEpochSecond(ZoneOffset.UTC);
+        if (seconds >= Long.MAX_VALUE / NANOS_PER_SECOND) {
+            return Long.MAX_VALUE;
+        }
+        if (seconds <= Long.MIN_VALUE / NANOS_PER_SECOND) {
+            return Long.MIN_VALUE;
+        }
+        return seconds * NANOS_PER_SECOND + time.getNano();
+    }
+}
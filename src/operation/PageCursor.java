@@ -0,0 +1,63 @@
+package operation;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Continuation token for cursor pagination. A token records the sequence
+ * number of the last element returned and the number of the page that
+ * follows; callers treat it as an opaque string.
+ */
+class PageCursor {
+    private final long lastSequence;
+    private final int nextPage;
+
+    private PageCursor(long lastSequence, int nextPage) {
+        this.lastSequence = lastSequence;
+        this.nextPage = nextPage;
+    }
+
+    /**
+     * Builds the token for the page after the one just returned.
+     * @param kind Identifies the list the token belongs to
+     * @param lastSequence Sequence number of the last element returned
+     * @param nextPage Number of the page the token leads to
+     * @return The token
+     */
+    static String encode(String kind, long lastSequence, int nextPage) {
+        String token = kind + ":" + lastSequence + ":" + nextPage;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads a token.
+     * @param kind The list the token must belong to
+     * @param token The token, or null or empty for the first page
+     * @return The cursor, or null for the first page
+     * @throws IllegalArgumentException if the token is malformed or belongs to another list
+     */
+    static PageCursor decode(String kind, String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(":");
+            if (parts.length == 3 && parts[0].equals(kind)) {
+                return new PageCursor(Long.parseLong(parts[1]), Integer.parseInt(parts[2]));
+            }
+        } catch (IllegalArgumentException e) {
+            // Bad Base64 or a NumberFormatException
+            throw new IllegalArgumentException("Invalid cursor: " + token, e);
+        }
+        throw new IllegalArgumentException("Not a " + kind + " cursor: " + token);
+    }
+
+    long getLastSequence() {
+        return lastSequence;
+    }
+
+    int getNextPage() {
+        return nextPage;
+    }
+}
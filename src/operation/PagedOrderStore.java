@@ -0,0 +1,348 @@
+package operation;
+
+import model.Order;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Order list that reads the journal segments on demand instead of keeping
+ * every order on the heap. Opening the store scans the segments once and
+ * keeps only a sparse index: the byte range and live record count of every
+ * page of PAGE_RECORDS records. A page is parsed when one of its orders is
+ * requested and kept in a bounded LRU cache.
+ *
+ * Orders created after the store was opened are kept in memory after the
+ * indexed pages. Deletes are remembered by order ID and applied to cached
+ * pages and to pages read later. Lines of a checkout batch that was never
+ * committed, and records repeating an order ID already indexed, are
+ * remembered by byte offset and skipped the same way.
+ *
+ * Segments are not compacted while the store is open, since that would move
+ * the indexed records. Instead a segment that has accumulated enough dead
+ * records is compacted when the store is opened, before it is indexed.
+ */
+class PagedOrderStore extends AbstractList<Order> implements AutoCloseable {
+    static final int PAGE_RECORDS = 256;
+    static final int DEFAULT_CACHED_PAGES = 64;
+
+    private final List<Page> pages = new ArrayList<>();
+    private final Map<File, RandomAccessFile> openFiles = new HashMap<>();
+    private final LinkedHashMap<Page, List<Order>> cache;
+    // Tombstoned in the journal or deleted since opening; skipped when a page is parsed
+    private final Set<String> deletedIds = new HashSet<>();
+    private final List<Order> appended = new ArrayList<>();
+    // List index of the first order of each page, so a page is found by binary search
+    private int[] pageStarts = new int[64];
+    private int indexedCount;
+
+    private static class Page {
+        final File file;
+        final long offset;
+        final int length;
+        int liveRecords;
+        // Offsets, relative to the page, of uncommitted batch lines inside it
+        Set<Long> skippedLines;
+
+        Page(File file, long offset, int length) {
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private PagedOrderStore(int cachedPages) {
+        cache = new LinkedHashMap<Page, List<Order>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Page, List<Order>> eldest) {
+                return size() > cachedPages;
+            }
+        };
+    }
+
+    /**
+     * Indexes the journal segments without keeping their orders, compacting
+     * the ones with enough dead records first.
+     * @param journal The journal
+     * @param cachedPages Maximum number of parsed pages kept in memory
+     * @param customers Index to fill with the position of every live order
+     * @return The opened store
+     * @throws IOException if a segment cannot be read
+     */
+    static PagedOrderStore open(PartitionedOrderJournal journal, int cachedPages, CustomerOrderIndex customers)
+            throws IOException {
+        PagedOrderStore store = new PagedOrderStore(Math.max(1, cachedPages));
+        for (File file : journal.getSegmentFiles()) {
+            Scan scan = scan(file);
+            if (OrderJournal.worthCompacting(scan.garbage, scan.records)) {
+                journal.compactNow(file);
+                scan = scan(file);
+            }
+            store.index(file, scan, customers);
+        }
+        return store;
+    }
+
+    @Override
+    public synchronized int size() {
+        return indexedCount + appended.size();
+    }
+
+    @Override
+    public synchronized Order get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        if (index >= indexedCount) {
+            return appended.get(index - indexedCount);
+        }
+        int page = locate(index);
+        return load(pages.get(page)).get(index - pageStarts[page]);
+    }
+
+    @Override
+    public synchronized boolean add(Order order) {
+        appended.add(order);
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public synchronized Order remove(int index) {
+        Order order = get(index);
+        if (index >= indexedCount) {
+            appended.remove(index - indexedCount);
+        } else {
+            int page = locate(index);
+            load(pages.get(page)).remove(index - pageStarts[page]);
+            pages.get(page).liveRecords--;
+            for (int i = page + 1; i < pages.size(); i++) {
+                pageStarts[i]--;
+            }
+            indexedCount--;
+            deletedIds.add(order.getOrderId());
+        }
+        modCount++;
+        return order;
+    }
+
+    @Override
+    public synchronized void clear() {
+        pages.clear();
+        cache.clear();
+        appended.clear();
+        deletedIds.clear();
+        indexedCount = 0;
+        closeFiles();
+        modCount++;
+    }
+
+    /**
+     * @return Number of indexed pages
+     */
+    synchronized int getPageCount() {
+        return pages.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        closeFiles();
+    }
+
+    private void closeFiles() {
+        for (RandomAccessFile file : openFiles.values()) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        openFiles.clear();
+    }
+
+    // What the first pass over a segment found
+    private static class Scan {
+        final Set<String> tombstones = new HashSet<>();
+        // Byte offsets of the lines of batches that were never committed
+        final Set<Long> uncommitted = new HashSet<>();
+        int records;
+        // Tombstones, the records they cancel, batch markers and uncommitted lines
+        int garbage;
+    }
+
+    // First pass collects the tombstones and the uncommitted batch lines and counts the dead records
+    private static Scan scan(File file) throws IOException {
+        Scan scan = new Scan();
+        try (Reader in = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            CsvRecordReader reader = new CsvRecordReader(in);
+            reader.trackByteOffsets();
+            List<Long> batch = null;
+            while (reader.next()) {
+                scan.records++;
+                if (reader.startsWith(OrderJournal.BATCH_RECORD_PREFIX)) {
+                    if (batch != null) {
+                        batch.add(reader.lineByteOffset());
+                    } else {
+                        scan.uncommitted.add(reader.lineByteOffset());
+                    }
+                    continue;
+                }
+                if (reader.startsWith(OrderJournal.BATCH_COMMIT)) {
+                    scan.garbage++;
+                    batch = null;
+                    continue;
+                }
+                // Anything else ends a batch that has not been committed
+                if (batch != null) {
+                    scan.uncommitted.addAll(batch);
+                }
+                batch = reader.startsWith(OrderJournal.BATCH_BEGIN) ? new ArrayList<>() : null;
+                if (batch != null) {
+                    scan.garbage++;
+                }
+                if (reader.startsWith(OrderJournal.TOMBSTONE_PREFIX.charAt(0))) {
+                    scan.tombstones.add(reader.field(0).substring(OrderJournal.TOMBSTONE_PREFIX.length()));
+                    scan.garbage += 2;
+                }
+            }
+            if (batch != null) {
+                scan.uncommitted.addAll(batch);
+            }
+        }
+        scan.garbage += scan.uncommitted.size();
+        return scan;
+    }
+
+    // Second pass cuts the segment into pages, keeping the first record of each order ID
+    private void index(File file, Scan scan, CustomerOrderIndex customers) throws IOException {
+        Set<String> tombstones = scan.tombstones;
+        Set<Long> uncommitted = scan.uncommitted;
+        Set<String> indexedIds = new HashSet<>();
+        deletedIds.addAll(tombstones);
+        try (Reader in = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            CsvRecordReader reader = new CsvRecordReader(in);
+            reader.trackByteOffsets();
+            long pageOffset = 0;
+            long pageEnd = 0;
+            int pageRecords = 0;
+            int liveRecords = 0;
+            List<Long> skippedLines = new ArrayList<>();
+            while (reader.next()) {
+                if (reader.startsWith(OrderJournal.TOMBSTONE_PREFIX.charAt(0)) || reader.fieldCount() < 4) {
+                    continue;
+                }
+                String orderId = reader.field(0);
+                if (reader.startsWith(OrderJournal.BATCH_RECORD_PREFIX)) {
+                    orderId = orderId.substring(1);
+                }
+                if (uncommitted.contains(reader.lineByteOffset()) || !indexedIds.add(orderId)) {
+                    if (pageRecords > 0) {
+                        skippedLines.add(reader.lineByteOffset());
+                    }
+                    continue;
+                }
+                if (pageRecords == PAGE_RECORDS) {
+                    addPage(file, pageOffset, pageEnd, liveRecords, skippedLines);
+                    pageRecords = 0;
+                    liveRecords = 0;
+                    skippedLines.clear();
+                }
+                if (pageRecords == 0) {
+                    pageOffset = reader.lineByteOffset();
+                }
+                if (!tombstones.contains(orderId)) {
+                    customers.append(reader.field(1), indexedCount + liveRecords);
+                    liveRecords++;
+                }
+                pageRecords++;
+                pageEnd = reader.lineByteOffset() + reader.lineByteLength();
+            }
+            if (pageRecords > 0) {
+                addPage(file, pageOffset, pageEnd, liveRecords, skippedLines);
+            }
+        }
+    }
+
+    // Finds the page holding an indexed order: the last page that starts at or before it,
+    // which skips pages left without live orders
+    private int locate(int index) {
+        int low = 0;
+        int high = pages.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (pageStarts[middle] <= index) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private void addPage(File file, long offset, long end, int liveRecords, List<Long> skippedLines) {
+        Page page = new Page(file, offset, (int) (end - offset));
+        page.liveRecords = liveRecords;
+        for (long line : skippedLines) {
+            // Lines skipped after the last record of the page lie outside it
+            if (line < end) {
+                if (page.skippedLines == null) {
+                    page.skippedLines = new HashSet<>();
+                }
+                page.skippedLines.add(line - offset);
+            }
+        }
+        if (pages.size() == pageStarts.length) {
+            pageStarts = Arrays.copyOf(pageStarts, pageStarts.length * 2);
+        }
+        pageStarts[pages.size()] = indexedCount;
+        pages.add(page);
+        indexedCount += liveRecords;
+    }
+
+    // Parses a page, or returns it from the cache; the list holds only live orders
+    private List<Order> load(Page page) {
+        List<Order> live = cache.get(page);
+        if (live != null) {
+            return live;
+        }
+        live = new ArrayList<>(page.liveRecords);
+        try {
+            RandomAccessFile in = openFiles.get(page.file);
+            if (in == null) {
+                in = new RandomAccessFile(page.file, "r");
+                openFiles.put(page.file, in);
+            }
+            byte[] bytes = new byte[page.length];
+            in.seek(page.offset);
+            in.readFully(bytes);
+            CharBuffer chars = StandardCharsets.UTF_8.decode(ByteBuffer.wrap(bytes));
+            CsvRecordReader reader = new CsvRecordReader(chars.array(),
+                chars.arrayOffset() + chars.position(), chars.arrayOffset() + chars.limit());
+            if (page.skippedLines != null) {
+                reader.trackByteOffsets();
+            }
+            OrderJournal.RecordParser parser = new OrderJournal.RecordParser();
+            while (reader.next()) {
+                if (page.skippedLines != null && page.skippedLines.contains(reader.lineByteOffset())) {
+                    continue;
+                }
+                Object record = parser.parse(reader);
+                if (record instanceof OrderJournal.BatchedOrder) {
+                    record = ((OrderJournal.BatchedOrder) record).order;
+                }
+                if (record instanceof Order && !deletedIds.contains(((Order) record).getOrderId())) {
+                    live.add((Order) record);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading orders from " + page.file, e);
+        }
+        if (live.size() != page.liveRecords) {
+            throw new IllegalStateException(page.file + " changed since it was indexed");
+        }
+        cache.put(page, live);
+        return live;
+    }
+}
@@ -0,0 +1,117 @@
+package operation;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Parses a CSV order journal in parallel.
+ * The file is split into byte ranges that start right after a newline, each
+ * range is parsed on a fork-join pool, and the parsed chunks are returned in
+ * file order so the caller can replay them exactly like a serial read.
+ */
+class ParallelOrderLoader {
+    private static final int MIN_CHUNK_BYTES = 1 << 20;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private ParallelOrderLoader() {
+    }
+
+    /**
+     * Parses every line of the journal.
+     * @param file The journal file
+     * @param pool The pool to parse on
+     * @return One list per chunk, in file order, holding what
+     *         {@link OrderJournal.RecordParser#parse} returned for each valid record
+     * @throws IOException if the file cannot be read
+     */
+    static List<List<Object>> parse(File file, ForkJoinPool pool) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            List<Long> boundaries = splitOnNewlines(channel, pool.getParallelism() * CHUNKS_PER_THREAD);
+            List<ForkJoinTask<List<Object>>> tasks = new ArrayList<>();
+            for (int i = 0; i + 1 < boundaries.size(); i++) {
+                long start = boundaries.get(i);
+                long end = boundaries.get(i + 1);
+                tasks.add(pool.submit(() -> parseChunk(channel, start, end)));
+            }
+            List<List<Object>> chunks = new ArrayList<>(tasks.size());
+            for (ForkJoinTask<List<Object>> task : tasks) {
+                try {
+                    chunks.add(task.join());
+                } catch (RuntimeException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+            return chunks;
+        }
+    }
+
+    private static List<Long> splitOnNewlines(FileChannel channel, int targetChunks) throws IOException {
+        long size = channel.size();
+        long chunkSize = Math.max(MIN_CHUNK_BYTES, size / Math.max(1, targetChunks));
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(0L);
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long position = chunkSize;
+        while (position < size) {
+            // Move the split point to just past the next newline
+            long boundary = -1;
+            long scan = position;
+            while (boundary < 0 && scan < size) {
+                probe.clear();
+                int read = channel.read(probe, scan);
+                if (read <= 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (probe.get(i) == '\n') {
+                        boundary = scan + i + 1;
+                        break;
+                    }
+                }
+                scan += read;
+            }
+            if (boundary < 0 || boundary >= size) {
+                break;
+            }
+            boundaries.add(boundary);
+            position = boundary + chunkSize;
+        }
+        boundaries.add(size);
+        return boundaries;
+    }
+
+    private static List<Object> parseChunk(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate((int) (end - start));
+        while (bytes.hasRemaining()) {
+            if (channel.read(bytes, start + bytes.position()) < 0) {
+                break;
+            }
+        }
+        bytes.flip();
+        // Decode the whole chunk once and scan its records in place
+        CharBuffer chars = StandardCharsets.UTF_8.decode(bytes);
+        CsvRecordReader reader = new CsvRecordReader(chars.array(),
+            chars.arrayOffset() + chars.position(), chars.arrayOffset() + chars.limit());
+        OrderJournal.RecordParser parser = new OrderJournal.RecordParser();
+        List<Object> records = new ArrayList<>(chars.remaining() / 32);
+        while (reader.next()) {
+            Object record = parser.parse(reader);
+            if (record != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+}
@@ -0,0 +1,234 @@
+package operation;
+
+import model.Order;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Order journal split into one segment file per calendar month of the
+ * order's create time, such as data/orders-2024-03.txt. Each segment is an
+ * {@link OrderJournal} with its own tombstones and compaction, so a month
+ * with many deletes is compacted without rewriting the others.
+ *
+ * A legacy data/orders.txt is migrated into segments the first time the
+ * journal is opened and then renamed to orders.txt.migrated. Each legacy row
+ * goes to the segment of its own create time; rows written without one are
+ * dated to the legacy file's last modification.
+ */
+class PartitionedOrderJournal {
+    private static final Pattern SEGMENT_NAME = Pattern.compile("orders-(\\d{4}-\\d{2})\\.txt");
+
+    private final File directory;
+    private final File legacyFile;
+    private final TreeMap<YearMonth, OrderJournal> segments = new TreeMap<>();
+
+    /**
+     * Opens the segments found in a directory.
+     * @param directory The data directory
+     * @param legacyFile The unpartitioned order file to migrate, if it exists
+     */
+    PartitionedOrderJournal(String directory, String legacyFile) {
+        this.directory = new File(directory);
+        this.legacyFile = new File(legacyFile);
+        File[] files = this.directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getName());
+                if (matcher.matches()) {
+                    segments.put(YearMonth.parse(matcher.group(1)), new OrderJournal(file.getPath()));
+                }
+            }
+        }
+    }
+
+    /**
+     * @param fileName A file name in the data directory
+     * @return true if the file is a monthly order segment
+     */
+    static boolean isSegmentFile(String fileName) {
+        return SEGMENT_NAME.matcher(fileName).matches();
+    }
+
+    /**
+     * Month partition key of an order.
+     * @param order The order
+     * @return The month as "yyyy-MM"
+     */
+    static String monthOf(Order order) {
+        return YearMonth.from(order.getCreateDateTime()).toString();
+    }
+
+    /**
+     * Replays every segment in month order.
+     * @return The live orders, ordered by month and then by the order they were written
+     */
+    synchronized List<Order> replay() {
+        migrateLegacyFile();
+        List<Order> orders = new ArrayList<>();
+        for (OrderJournal segment : segments.values()) {
+            orders.addAll(segment.replay());
+        }
+        return orders;
+    }
+
+    /**
+     * Replays every segment like {@link #replay()}, parsing each on a fork-join pool.
+     * @param pool The pool to parse on
+     * @return The live orders, ordered by month and then by the order they were written
+     */
+    synchronized List<Order> replayParallel(ForkJoinPool pool) {
+        migrateLegacyFile();
+        List<Order> orders = new ArrayList<>();
+        for (OrderJournal segment : segments.values()) {
+            orders.addAll(segment.replayParallel(pool));
+        }
+        return orders;
+    }
+
+    /**
+     * Segment files in month order, after migrating the legacy file.
+     * @return The segment files
+     */
+    synchronized List<File> getSegmentFiles() {
+        migrateLegacyFile();
+        List<File> files = new ArrayList<>();
+        for (OrderJournal segment : segments.values()) {
+            files.add(segment.getFile());
+        }
+        return files;
+    }
+
+    /**
+     * Compacts one segment right away; see {@link OrderJournal#compactNow()}.
+     * @param segmentFile A file returned by {@link #getSegmentFiles()}
+     */
+    synchronized void compactNow(File segmentFile) {
+        for (OrderJournal segment : segments.values()) {
+            if (segment.getFile().equals(segmentFile)) {
+                segment.compactNow();
+            }
+        }
+    }
+
+    /**
+     * Appends a batch of records, routing each to the segment of its month.
+     * Each segment's share is written together; a segment that fails does
+     * not stop the others, so only its records need to be written again.
+     * @param records Order records and tombstones, in order
+     * @return The records that were not written, in order; empty if the whole batch was written
+     */
+    synchronized List<String> appendRecords(List<String> records) {
+        Map<YearMonth, List<String>> byMonth = new LinkedHashMap<>();
+        for (String record : records) {
+            byMonth.computeIfAbsent(monthOfRecord(record), month -> new ArrayList<>()).add(record);
+        }
+        List<String> unwritten = new ArrayList<>();
+        for (Map.Entry<YearMonth, List<String>> entry : byMonth.entrySet()) {
+            if (!segment(entry.getKey()).appendRecords(entry.getValue())) {
+                unwritten.addAll(entry.getValue());
+            }
+        }
+        if (unwritten.size() > 0 && unwritten.size() < records.size()) {
+            // Back into batch order, which the per-month grouping changed
+            Set<String> failed = new HashSet<>(unwritten);
+            unwritten.clear();
+            for (String record : records) {
+                if (failed.contains(record)) {
+                    unwritten.add(record);
+                }
+            }
+        }
+        return unwritten;
+    }
+
+    /**
+     * @return true if any segment has accumulated enough dead records to be compacted
+     */
+    synchronized boolean needsCompaction() {
+        for (OrderJournal segment : segments.values()) {
+            if (segment.needsCompaction()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Starts a background compaction of every segment that has accumulated
+     * enough dead records.
+     * @param liveOrders All live orders, all of them already written to the
+     *        journal; only the ones in a compacted month are used
+     */
+    synchronized void compactIfNeeded(List<Order> liveOrders) {
+        for (Map.Entry<YearMonth, OrderJournal> entry : segments.entrySet()) {
+            if (entry.getValue().needsCompaction()) {
+                String month = entry.getKey().toString();
+                List<Order> monthOrders = new ArrayList<>();
+                for (Order order : liveOrders) {
+                    if (monthOf(order).equals(month)) {
+                        monthOrders.add(order);
+                    }
+                }
+                entry.getValue().compactAsync(monthOrders);
+            }
+        }
+    }
+
+    /**
+     * Deletes every segment.
+     */
+    synchronized void reset() {
+        for (OrderJournal segment : segments.values()) {
+            segment.reset();
+            if (!segment.getFile().delete()) {
+                System.err.println("Could not delete " + segment.getFile());
+            }
+        }
+        segments.clear();
+    }
+
+    private OrderJournal segment(YearMonth month) {
+        return segments.computeIfAbsent(month, m ->
+            new OrderJournal(new File(directory, "orders-" + m + ".txt").getPath()));
+    }
+
+    // Records end with the create time ("yyyy-MM-dd HH:mm:ss"); tombstones end with the month
+    private static YearMonth monthOfRecord(String record) {
+        int start = record.lastIndexOf(',') + 1;
+        return YearMonth.parse(record.substring(start, start + 7));
+    }
+
+    private void migrateLegacyFile() {
+        if (!legacyFile.exists()) {
+            return;
+        }
+        // Rows written without a create time were created before the file was last written
+        LocalDateTime lastModified = LocalDateTime.ofInstant(
+            Instant.ofEpochMilli(legacyFile.lastModified()), ZoneId.systemDefault());
+        List<Order> legacyOrders = new OrderJournal(legacyFile.getPath()).replay(lastModified);
+        List<String> records = new ArrayList<>(legacyOrders.size());
+        for (Order order : legacyOrders) {
+            records.add(OrderJournal.format(order));
+        }
+        if (!appendRecords(records).isEmpty()) {
+            System.err.println("Could not migrate " + legacyFile + " into monthly partitions");
+            return;
+        }
+        try {
+            Files.move(legacyFile.toPath(), new File(legacyFile.getPath() + ".migrated").toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package operation;
+
+import model.Product;
+import java.util.*;
+
+/**
+ * Index from category to the products in it, in catalog order.
+ * The size of each category's list is its facet count, so counts are kept
+ * current by every add and remove without scanning the catalog. Categories
+ * are listed in the order they first appeared and are dropped once their
+ * last product is removed. All methods are synchronized so readers see a
+ * consistent view while products are added and deleted.
+ */
+class ProductCategoryIndex {
+    private final Map<String, List<Product>> byCategory = new LinkedHashMap<>();
+
+    synchronized void add(Product product) {
+        byCategory.computeIfAbsent(product.getCategory(), c -> new ArrayList<>()).add(product);
+    }
+
+    synchronized void remove(Product product) {
+        List<Product> products = byCategory.get(product.getCategory());
+        if (products == null) {
+            return;
+        }
+        for (int i = 0; i < products.size(); i++) {
+            if (products.get(i) == product) {
+                products.remove(i);
+                break;
+            }
+        }
+        if (products.isEmpty()) {
+            byCategory.remove(product.getCategory());
+        }
+    }
+
+    synchronized void clear() {
+        byCategory.clear();
+    }
+
+    /**
+     * @return Every category that has at least one product
+     */
+    synchronized List<String> categories() {
+        return new ArrayList<>(byCategory.keySet());
+    }
+
+    /**
+     * @return Number of products in each category, in category order
+     */
+    synchronized Map<String, Integer> counts() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Product>> entry : byCategory.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().size());
+        }
+        return counts;
+    }
+
+    /**
+     * @param category The category
+     * @return Number of products in the category
+     */
+    synchronized int count(String category) {
+        List<Product> products = byCategory.get(category);
+        return products == null ? 0 : products.size();
+    }
+
+    /**
+     * Copies a range of one category's products.
+     * @param category The category
+     * @param from Index of the first product, inclusive
+     * @param to Index of the last product, exclusive
+     * @return The products in the range
+     */
+    synchronized List<Product> range(String category, int from, int to) {
+        List<Product> products = byCategory.get(category);
+        if (products == null || from >= products.size()) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(products.subList(Math.max(0, from), Math.min(to, products.size())));
+    }
+}
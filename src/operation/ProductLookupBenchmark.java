@@ -0,0 +1,76 @@
+package operation;
+
+import model.Product;
+import java.util.*;
+
+/**
+ * Compares getProductById through the product ID index with the list scan it
+ * replaced, on generated catalogs of 1,000 products up to the given maximum
+ * (1,000,000 by default), growing tenfold. One lookup in ten asks for an ID
+ * that does not exist, which is the worst case for the scan.
+ *
+ * Usage: java operation.ProductLookupBenchmark [maxProducts]
+ */
+public class ProductLookupBenchmark {
+    private static final int INDEX_LOOKUPS = 1_000_000;
+    // The scan is linear, so it gets fewer lookups on larger catalogs
+    private static final long SCAN_WORK = 50_000_000L;
+
+    private interface Lookup {
+        Product find(String productId);
+    }
+
+    public static void main(String[] args) {
+        int maxProducts = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        System.out.printf("%12s %16s %16s%n", "products", "scan ns/lookup", "index ns/lookup");
+        for (int size = 1_000; size <= maxProducts; size *= 10) {
+            List<Product> products = new ArrayList<>(size);
+            Map<String, Product> productsById = new HashMap<>(size * 2);
+            Random random = new Random(size);
+            for (int i = 0; i < size; i++) {
+                Product product = new Product(String.format("p_%010d", i), "Product " + i,
+                    random.nextInt(200_000) / 100.0, "Category " + random.nextInt(20));
+                products.add(product);
+                productsById.putIfAbsent(product.getId(), product);
+            }
+            // The lookup as it was before the index
+            Lookup scan = productId -> products.stream()
+                .filter(p -> p.getId().equals(productId))
+                .findFirst()
+                .orElse(null);
+            Lookup index = productsById::get;
+
+            int scanLookups = (int) Math.max(100, SCAN_WORK / size);
+            double scanNanos = time(scan, lookupIds(size, scanLookups, random));
+            double indexNanos = time(index, lookupIds(size, INDEX_LOOKUPS, random));
+            System.out.printf("%,12d %16.1f %16.1f%n", size, scanNanos, indexNanos);
+        }
+    }
+
+    private static String[] lookupIds(int size, int count, Random random) {
+        String[] ids = new String[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = i % 10 == 9
+                ? String.format("p_%010d", size + random.nextInt(size))
+                : String.format("p_%010d", random.nextInt(size));
+        }
+        return ids;
+    }
+
+    // Runs the lookups once to warm up, then again timed; returns nanoseconds per lookup
+    private static double time(Lookup lookup, String[] ids) {
+        int found = 0;
+        for (String id : ids) {
+            found += lookup.find(id) != null ? 1 : 0;
+        }
+        long start = System.nanoTime();
+        for (String id : ids) {
+            found -= lookup.find(id) != null ? 1 : 0;
+        }
+        long elapsed = System.nanoTime() - start;
+        if (found != 0) {
+            throw new IllegalStateException("Lookups returned different results on the second run");
+        }
+        return (double) elapsed / ids.length;
+    }
+}
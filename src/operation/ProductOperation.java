@@ -3,18 +3,29 @@ package operation;
 import model.Product;
 import java.io.*;
 import java.util.*;
-import java.util.concurrent.ThreadLocalRandom;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ProductOperation {
     private static ProductOperation instance;
     private static final String PRODUCTS_FILE = "data/products.txt";
     private static final int ITEMS_PER_PAGE = 10;
     private List<Product> products;
+    // Primary key index over products; holds the first product in list order for each ID.
+    // Concurrent so getProductById can be called from parallel order passes without the lock
+    private final Map<String, Product> productsById = new ConcurrentHashMap<>();
+    private final ProductSearchIndex searchIndex;
+    private final ProductCategoryIndex categoryIndex;
+    private final ProductPriceIndex priceIndex;
+    // Insertion sequence of each product in the product list; the key for cursor pagination
+    private final SequenceColumn productSequence = new SequenceColumn();
 
     private ProductOperation() {
         products = new ArrayList<>();
+        searchIndex = new ProductSearchIndex();
+        categoryIndex = new ProductCategoryIndex();
+        priceIndex = new ProductPriceIndex();
         loadProducts();
+        priceIndex.rebuild(products);
     }
 
     public static ProductOperation getInstance() {
@@ -24,7 +35,7 @@ public class ProductOperation {
         return instance;
     }
 
-    public void extractProductsFromFiles() {
+    public synchronized void extractProductsFromFiles() {
         // Implementation for extracting products from files
         // This would typically read from source files and save to products.txt
         try {
@@ -33,28 +44,33 @@ public class ProductOperation {
                 directory.mkdirs();
             }
             
-            // Read all .txt files in the data directory
-            File[] files = directory.listFiles((dir, name) -> name.endsWith(".txt") && !name.equals("products.txt"));
+            // Read all .txt files in the data directory except the order journal segments
+            File[] files = directory.listFiles((dir, name) -> name.endsWith(".txt") && !name.equals("products.txt")
+                && !PartitionedOrderJournal.isSegmentFile(name));
             if (files != null) {
                 for (File file : files) {
-                    try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-                        String line;
-                        while ((line = reader.readLine()) != null) {
+                    try (Reader in = new FileReader(file)) {
+                        CsvRecordReader reader = new CsvRecordReader(in);
+                        while (reader.next()) {
                             // Parse product data and add to products list
                             // Format: id,name,price,category
-                            String[] parts = line.split(",");
-                            if (parts.length >= 4) {
+                            if (reader.fieldCount() >= 4) {
                                 Product product = new Product(
-                                    parts[0], // id
-                                    parts[1], // name
-                                    Double.parseDouble(parts[2]), // price
-                                    parts[3]  // category
+                                    reader.field(0), // id
+                                    reader.field(1), // name
+                                    reader.parseDouble(2), // price
+                                    reader.field(3)  // category
                                 );
                                 products.add(product);
+                                productSequence.append();
+                                productsById.putIfAbsent(product.getId(), product);
+                                searchIndex.add(product);
+                                categoryIndex.add(product);
                             }
                         }
                     }
                 }
+                priceIndex.rebuild(products);
                 saveProducts();
             }
         } catch (IOException e) {
@@ -62,42 +78,124 @@ public class ProductOperation {
         }
     }
 
-    public ProductListResult getProductList(int pageNumber) {
-        int startIndex = (pageNumber - 1) * ITEMS_PER_PAGE;
+    public synchronized ProductListResult getProductList(int pageNumber) {
+        return getProductPage((pageNumber - 1) * ITEMS_PER_PAGE, pageNumber);
+    }
+
+    /**
+     * Retrieve the page of products that follows a cursor. The page starts
+     * right after the last product already returned, even if products were
+     * added or deleted since.
+     * @param cursor Continuation token from a previous ProductListResult, or null for the first page
+     * @return A ProductListResult containing the page and the cursor for the next one
+     * @throws IllegalArgumentException if the cursor is not a valid product cursor
+     */
+    public synchronized ProductListResult getProductList(String cursor) {
+        PageCursor position = PageCursor.decode("product", cursor);
+        if (position == null) {
+            return getProductPage(0, 1);
+        }
+        return getProductPage(productSequence.positionAfter(position.getLastSequence()), position.getNextPage());
+    }
+
+    private ProductListResult getProductPage(int startIndex, int pageNumber) {
+        startIndex = Math.max(0, startIndex);
         int endIndex = Math.min(startIndex + ITEMS_PER_PAGE, products.size());
         int totalPages = (int) Math.ceil((double) products.size() / ITEMS_PER_PAGE);
 
-        List<Product> pageProducts = startIndex < products.size() 
-            ? products.subList(startIndex, endIndex)
+        // A copy, so the page does not change when the catalog does
+        List<Product> pageProducts = startIndex < products.size()
+            ? new ArrayList<>(products.subList(startIndex, endIndex))
             : new ArrayList<>();
 
+        String nextCursor = endIndex < products.size() && !pageProducts.isEmpty()
+            ? PageCursor.encode("product", productSequence.get(endIndex - 1), pageNumber + 1)
+            : null;
+        return new ProductListResult(pageProducts, pageNumber, totalPages, nextCursor);
+    }
+
+    /**
+     * Retrieve one page of the products priced in a range, sorted by price.
+     * @param minPrice Lowest price, inclusive
+     * @param maxPrice Highest price, inclusive
+     * @param descending true to list the most expensive products first
+     * @param pageNumber The page number to retrieve
+     * @return A ProductListResult containing the page, current page, and total pages
+     */
+    public synchronized ProductListResult getProductListByPriceRange(double minPrice, double maxPrice,
+                                                                     boolean descending, int pageNumber) {
+        int startIndex = (pageNumber - 1) * ITEMS_PER_PAGE;
+        int totalPages = (int) Math.ceil((double) priceIndex.count(minPrice, maxPrice) / ITEMS_PER_PAGE);
+        List<Product> pageProducts = priceIndex.range(minPrice, maxPrice, descending,
+            startIndex, startIndex + ITEMS_PER_PAGE);
         return new ProductListResult(pageProducts, pageNumber, totalPages);
     }
 
-    public boolean deleteProduct(String productId) {
-        boolean removed = products.removeIf(p -> p.getId().equals(productId));
+    /**
+     * Retrieve one page of the whole catalog sorted by price.
+     * @param descending true to list the most expensive products first
+     * @param pageNumber The page number to retrieve
+     * @return A ProductListResult containing the page, current page, and total pages
+     */
+    public synchronized ProductListResult getProductListSortedByPrice(boolean descending, int pageNumber) {
+        return getProductListByPriceRange(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY,
+            descending, pageNumber);
+    }
+
+    /**
+     * @param count Number of products to return
+     * @return The cheapest products, cheapest first
+     */
+    public synchronized List<Product> getCheapestProducts(int count) {
+        return priceIndex.range(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, false, 0, count);
+    }
+
+    /**
+     * @param count Number of products to return
+     * @return The most expensive products, most expensive first
+     */
+    public synchronized List<Product> getMostExpensiveProducts(int count) {
+        return priceIndex.range(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, true, 0, count);
+    }
+
+    public synchronized boolean deleteProduct(String productId) {
+        if (productId == null || !productsById.containsKey(productId)) {
+            return false;
+        }
+        boolean removed = false;
+        for (int i = products.size() - 1; i >= 0; i--) {
+            Product p = products.get(i);
+            if (p.getId().equals(productId)) {
+                products.remove(i);
+                productSequence.remove(i);
+                searchIndex.remove(p);
+                categoryIndex.remove(p);
+                priceIndex.remove(p);
+                removed = true;
+            }
+        }
         if (removed) {
+            productsById.remove(productId);
             saveProducts();
         }
         return removed;
     }
 
-    public List<Product> getProductListByKeyword(String keyword) {
-        String lowerKeyword = keyword.toLowerCase();
-        return products.stream()
-                .filter(p -> p.getName().toLowerCase().contains(lowerKeyword))
-                .collect(Collectors.toList());
+    public synchronized List<Product> getProductListByKeyword(String keyword) {
+        return searchIndex.search(keyword);
     }
 
     public Product getProductById(String productId) {
-        return products.stream()
-                .filter(p -> p.getId().equals(productId))
-                .findFirst()
-                .orElse(null);
+        return productId == null ? null : productsById.get(productId);
     }
 
-    public void deleteAllProducts() {
+    public synchronized void deleteAllProducts() {
         products.clear();
+        productSequence.clear();
+        productsById.clear();
+        searchIndex.clear();
+        categoryIndex.clear();
+        priceIndex.clear();
         saveProducts();
     }
 
@@ -153,27 +251,34 @@ public class ProductOperation {
         }
 
         // Now load the products
-        try (BufferedReader reader = new BufferedReader(new FileReader(PRODUCTS_FILE))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length >= 4) {
+        try (Reader in = new FileReader(PRODUCTS_FILE)) {
+            CsvRecordReader reader = new CsvRecordReader(in);
+            while (reader.next()) {
+                if (reader.fieldCount() >= 4) {
                     try {
                         Product product = new Product(
-                            parts[0].trim(), // id
-                            parts[1].trim(), // name
-                            Double.parseDouble(parts[2].trim()), // price
-                            parts[3].trim()  // category
+                            reader.trimmedField(0), // id
+                            reader.trimmedField(1), // name
+                            reader.parseDouble(2), // price
+                            reader.trimmedField(3)  // category
                         );
                         products.add(product);
+                        productSequence.append();
+                        productsById.putIfAbsent(product.getId(), product);
+                        searchIndex.add(product);
+                        categoryIndex.add(product);
                     } catch (NumberFormatException e) {
-                        System.err.println("Error parsing product price: " + line);
+                        System.err.println("Error parsing product price: " + reader.record());
                     }
                 }
             }
         } catch (IOException e) {
             System.err.println("Error loading products: " + e.getMessage());
             products = new ArrayList<>();
+            productSequence.clear();
+            productsById.clear();
+            searchIndex.clear();
+            categoryIndex.clear();
         }
     }
 
@@ -191,14 +296,32 @@ public class ProductOperation {
         }
     }
 
-    public List<String> getCategories() {
-        return products.stream()
-                .map(Product::getCategory)
-                .distinct()
-                .collect(Collectors.toList());
+    public synchronized List<String> getCategories() {
+        return categoryIndex.categories();
+    }
+
+    /**
+     * Number of products in each category, read from the category index.
+     * @return Product count per category, in the order of {@link #getCategories()}
+     */
+    public synchronized Map<String, Integer> getCategoryCounts() {
+        return categoryIndex.counts();
+    }
+
+    /**
+     * Retrieve one page of the products in a category.
+     * @param category The category to browse
+     * @param pageNumber The page number to retrieve
+     * @return A ProductListResult containing the page, current page, and total pages
+     */
+    public synchronized ProductListResult getProductListByCategory(String category, int pageNumber) {
+        int startIndex = (pageNumber - 1) * ITEMS_PER_PAGE;
+        int totalPages = (int) Math.ceil((double) categoryIndex.count(category) / ITEMS_PER_PAGE);
+        List<Product> pageProducts = categoryIndex.range(category, startIndex, startIndex + ITEMS_PER_PAGE);
+        return new ProductListResult(pageProducts, pageNumber, totalPages);
     }
 
-    public boolean addProduct(String name, double price, String category) {
+    public synchronized boolean addProduct(String name, double price, String category) {
         if (name == null || name.trim().isEmpty()) {
             return false;
         }
@@ -210,17 +333,15 @@ public class ProductOperation {
         }
 
         // Generate unique product ID
-        Set<String> existingIds = products.stream()
-                .map(Product::getId)
-                .collect(Collectors.toSet());
-        
-        String productId;
-        do {
-            productId = String.format("p_%010d", ThreadLocalRandom.current().nextInt(1000000000));
-        } while (existingIds.contains(productId));
+        String productId = IdGenerator.getInstance().nextId(IdGenerator.PRODUCT_PREFIX);
 
         Product product = new Product(productId, name.trim(), price, category.trim());
         products.add(product);
+        productSequence.append();
+        productsById.put(productId, product);
+        searchIndex.add(product);
+        categoryIndex.add(product);
+        priceIndex.add(product);
         saveProducts();
         return true;
     }
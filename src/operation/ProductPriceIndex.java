@@ -0,0 +1,123 @@
+package operation;
+
+import model.Product;
+import java.util.*;
+
+/**
+ * Products sorted by price, kept as a primitive double[] of prices with a
+ * parallel array of products. A price range is located with two binary
+ * searches, and a page of the range, ascending or descending, is an index
+ * slice, so a query costs O(log n + page size) with no per-request sort.
+ * Products with the same price stay in the order they were added.
+ */
+class ProductPriceIndex {
+    private double[] prices = new double[16];
+    private Product[] products = new Product[16];
+    private int size;
+
+    /**
+     * Replaces the index contents with a catalog, sorting it once.
+     * @param catalog The products in catalog order
+     */
+    synchronized void rebuild(List<Product> catalog) {
+        Product[] sorted = catalog.toArray(new Product[0]);
+        // Stable sort, so equal prices keep catalog order
+        Arrays.sort(sorted, Comparator.comparingDouble(Product::getPrice));
+        size = sorted.length;
+        products = Arrays.copyOf(sorted, Math.max(16, size));
+        prices = new double[products.length];
+        for (int i = 0; i < size; i++) {
+            prices[i] = sorted[i].getPrice();
+        }
+    }
+
+    synchronized void add(Product product) {
+        if (size == prices.length) {
+            prices = Arrays.copyOf(prices, size * 2);
+            products = Arrays.copyOf(products, size * 2);
+        }
+        // After every product with the same price
+        int index = upperBound(product.getPrice());
+        System.arraycopy(prices, index, prices, index + 1, size - index);
+        System.arraycopy(products, index, products, index + 1, size - index);
+        prices[index] = product.getPrice();
+        products[index] = product;
+        size++;
+    }
+
+    synchronized void remove(Product product) {
+        for (int i = lowerBound(product.getPrice()); i < size && prices[i] == product.getPrice(); i++) {
+            if (products[i] == product) {
+                System.arraycopy(prices, i + 1, prices, i, size - i - 1);
+                System.arraycopy(products, i + 1, products, i, size - i - 1);
+                products[--size] = null;
+                return;
+            }
+        }
+    }
+
+    synchronized void clear() {
+        Arrays.fill(products, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * @param min Lowest price, inclusive
+     * @param max Highest price, inclusive
+     * @return Number of products priced in the range
+     */
+    synchronized int count(double min, double max) {
+        return Math.max(0, upperBound(max) - lowerBound(min));
+    }
+
+    /**
+     * Copies a slice of the products priced in a range.
+     * @param min Lowest price, inclusive
+     * @param max Highest price, inclusive
+     * @param descending true to order from the most expensive product
+     * @param from Index of the first product in that order, inclusive
+     * @param to Index of the last product in that order, exclusive
+     * @return The products in the slice
+     */
+    synchronized List<Product> range(double min, double max, boolean descending, int from, int to) {
+        int low = lowerBound(min);
+        int high = upperBound(max);
+        from = Math.max(0, from);
+        to = Math.min(to, high - low);
+        List<Product> result = new ArrayList<>(Math.max(0, to - from));
+        for (int i = from; i < to; i++) {
+            result.add(products[descending ? high - 1 - i : low + i]);
+        }
+        return result;
+    }
+
+    // First index whose price is >= price
+    private int lowerBound(double price) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (prices[mid] < price) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // First index whose price is > price
+    private int upperBound(double price) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (prices[mid] <= price) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,105 @@
+package operation;
+
+import java.util.*;
+
+/**
+ * Running order count and revenue per product, kept ranked as orders are
+ * created and deleted. Each product's totals live in one entry that is
+ * held in two sorted sets, by count and by revenue, so an order updates
+ * the rankings in O(log p) for p products and the top k products are read
+ * off the front of a set in O(k) without looking at any order.
+ */
+class ProductSalesLeaderboard {
+    private final Map<String, Sales> byProduct = new HashMap<>();
+    private final TreeSet<Sales> byCount = new TreeSet<>(
+        Comparator.comparingLong((Sales s) -> -s.count).thenComparing(s -> s.productId));
+    private final TreeSet<Sales> byRevenue = new TreeSet<>(
+        Comparator.comparingDouble((Sales s) -> -s.revenue).thenComparing(s -> s.productId));
+
+    private static class Sales {
+        final String productId;
+        long count;
+        double revenue;
+
+        Sales(String productId) {
+            this.productId = productId;
+        }
+    }
+
+    /**
+     * Counts an order.
+     * @param productId The product ordered
+     * @param price The price the order was placed at
+     */
+    synchronized void add(String productId, double price) {
+        Sales sales = byProduct.get(productId);
+        if (sales == null) {
+            sales = new Sales(productId);
+            byProduct.put(productId, sales);
+        } else {
+            byCount.remove(sales);
+            byRevenue.remove(sales);
+        }
+        sales.count++;
+        sales.revenue += price;
+        byCount.add(sales);
+        byRevenue.add(sales);
+    }
+
+    /**
+     * Takes back an order counted by {@link #add}.
+     * @param productId The product of the deleted order
+     * @param price The price of the deleted order
+     */
+    synchronized void remove(String productId, double price) {
+        Sales sales = byProduct.get(productId);
+        if (sales == null) {
+            return;
+        }
+        byCount.remove(sales);
+        byRevenue.remove(sales);
+        if (--sales.count == 0) {
+            byProduct.remove(productId);
+            return;
+        }
+        sales.revenue -= price;
+        byCount.add(sales);
+        byRevenue.add(sales);
+    }
+
+    synchronized void clear() {
+        byProduct.clear();
+        byCount.clear();
+        byRevenue.clear();
+    }
+
+    /**
+     * @param limit Number of products to return
+     * @return Order count of the best-selling products, highest first
+     */
+    synchronized Map<String, Long> topByCount(int limit) {
+        Map<String, Long> top = new LinkedHashMap<>();
+        for (Sales sales : byCount) {
+            if (top.size() == limit) {
+                break;
+            }
+            top.put(sales.productId, sales.count);
+        }
+        return top;
+    }
+
+    /**
+     * @param limit Number of products to return
+     * @return Revenue of the highest-earning products, highest first
+     */
+    synchronized Map<String, Double> topByRevenue(int limit) {
+        Map<String, Double> top = new LinkedHashMap<>();
+        for (Sales sales : byRevenue) {
+            if (top.size() == limit) {
+                break;
+            }
+            top.put(sales.productId, sales.revenue);
+        }
+        return top;
+    }
+}
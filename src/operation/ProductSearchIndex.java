@@ -0,0 +1,146 @@
+package operation;
+
+import model.Product;
+import java.util.*;
+
+/**
+ * Inverted n-gram index over lower-cased product names.
+ * Every product gets a serial number in the order it was added, and every
+ * substring of one to three characters of its name maps to a sorted posting
+ * list of serials. A keyword of up to three characters is answered straight
+ * from its posting list; a longer keyword intersects the postings of its
+ * trigrams and checks the few remaining candidates with contains, so the
+ * results are exactly those of a substring scan, in catalog order.
+ */
+class ProductSearchIndex {
+    private static final int MAX_GRAM = 3;
+
+    private final Map<String, Postings> postings = new HashMap<>();
+    private final TreeMap<Integer, Product> productsBySerial = new TreeMap<>();
+    private final Map<Integer, String> lowerNames = new HashMap<>();
+    private final Map<Product, Integer> serials = new IdentityHashMap<>();
+    private int nextSerial;
+
+    // Sorted, growable list of serials
+    private static class Postings {
+        int[] serials = new int[4];
+        int size;
+
+        void add(int serial) {
+            if (size == serials.length) {
+                serials = Arrays.copyOf(serials, size * 2);
+            }
+            serials[size++] = serial;
+        }
+
+        void remove(int serial) {
+            int index = Arrays.binarySearch(serials, 0, size, serial);
+            if (index >= 0) {
+                System.arraycopy(serials, index + 1, serials, index, size - index - 1);
+                size--;
+            }
+        }
+    }
+
+    /**
+     * Indexes a product after every product indexed so far.
+     * @param product The product
+     */
+    void add(Product product) {
+        int serial = nextSerial++;
+        String name = product.getName().toLowerCase();
+        serials.put(product, serial);
+        productsBySerial.put(serial, product);
+        lowerNames.put(serial, name);
+        for (String gram : grams(name)) {
+            // Serials only grow, so appending keeps each posting list sorted
+            postings.computeIfAbsent(gram, g -> new Postings()).add(serial);
+        }
+    }
+
+    /**
+     * Removes a product from the index.
+     * @param product The product, as passed to {@link #add}
+     */
+    void remove(Product product) {
+        Integer serial = serials.remove(product);
+        if (serial == null) {
+            return;
+        }
+        productsBySerial.remove(serial);
+        for (String gram : grams(lowerNames.remove(serial))) {
+            Postings list = postings.get(gram);
+            list.remove(serial);
+            if (list.size == 0) {
+                postings.remove(gram);
+            }
+        }
+    }
+
+    void clear() {
+        postings.clear();
+        productsBySerial.clear();
+        lowerNames.clear();
+        serials.clear();
+    }
+
+    /**
+     * Finds the products whose lower-cased name contains the lower-cased keyword.
+     * @param keyword The keyword
+     * @return The matching products in the order they were added
+     */
+    List<Product> search(String keyword) {
+        String lowerKeyword = keyword.toLowerCase();
+        if (lowerKeyword.isEmpty()) {
+            return new ArrayList<>(productsBySerial.values());
+        }
+        List<Product> result = new ArrayList<>();
+        if (lowerKeyword.length() <= MAX_GRAM) {
+            Postings list = postings.get(lowerKeyword);
+            if (list != null) {
+                for (int i = 0; i < list.size; i++) {
+                    result.add(productsBySerial.get(list.serials[i]));
+                }
+            }
+            return result;
+        }
+
+        // Intersect starting from the shortest posting list
+        List<Postings> lists = new ArrayList<>();
+        for (int i = 0; i + MAX_GRAM <= lowerKeyword.length(); i++) {
+            Postings list = postings.get(lowerKeyword.substring(i, i + MAX_GRAM));
+            if (list == null) {
+                return result;
+            }
+            lists.add(list);
+        }
+        lists.sort(Comparator.comparingInt(list -> list.size));
+        Postings shortest = lists.get(0);
+        candidates:
+        for (int i = 0; i < shortest.size; i++) {
+            int serial = shortest.serials[i];
+            for (int j = 1; j < lists.size(); j++) {
+                Postings list = lists.get(j);
+                if (Arrays.binarySearch(list.serials, 0, list.size, serial) < 0) {
+                    continue candidates;
+                }
+            }
+            // Every trigram occurs, but not necessarily in sequence
+            if (lowerNames.get(serial).contains(lowerKeyword)) {
+                result.add(productsBySerial.get(serial));
+            }
+        }
+        return result;
+    }
+
+    // Distinct substrings of one to MAX_GRAM characters
+    private static Set<String> grams(String name) {
+        Set<String> grams = new HashSet<>();
+        for (int start = 0; start < name.length(); start++) {
+            for (int length = 1; length <= MAX_GRAM && start + length <= name.length(); length++) {
+                grams.add(name.substring(start, start + length));
+            }
+        }
+        return grams;
+    }
+}
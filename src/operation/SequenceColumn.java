@@ -0,0 +1,68 @@
+package operation;
+
+import java.util.Arrays;
+
+/**
+ * Insertion sequence numbers kept parallel to a list. Each element gets the
+ * next number when it is appended, so the column is always ascending and
+ * the position of the first element after a given sequence number is found
+ * by binary search. Used as the key for cursor pagination: unlike a page
+ * offset, a sequence number still points at the same place after elements
+ * are inserted or removed.
+ */
+class SequenceColumn {
+    private long[] values = new long[1024];
+    private int size;
+    private long next;
+
+    /**
+     * Numbers an element appended to the end of the list.
+     * @return The element's sequence number
+     */
+    synchronized long append() {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size] = next++;
+        return values[size++];
+    }
+
+    /**
+     * Forgets the element removed from a list position.
+     * @param position The position the element was removed from
+     */
+    synchronized void remove(int position) {
+        System.arraycopy(values, position + 1, values, position, size - position - 1);
+        size--;
+    }
+
+    synchronized void clear() {
+        size = 0;
+    }
+
+    /**
+     * @param position A list position
+     * @return The sequence number of the element at that position
+     */
+    synchronized long get(int position) {
+        return values[position];
+    }
+
+    /**
+     * @param sequence A sequence number, which may belong to a removed element
+     * @return The position of the first element numbered after it
+     */
+    synchronized int positionAfter(long sequence) {
+        int index = Arrays.binarySearch(values, 0, size, sequence);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    /**
+     * @param sequence A sequence number
+     * @return The position of the element with that number, or -1 if it was removed
+     */
+    synchronized int positionOf(long sequence) {
+        int index = Arrays.binarySearch(values, 0, size, sequence);
+        return index >= 0 ? index : -1;
+    }
+}
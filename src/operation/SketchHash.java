@@ -0,0 +1,26 @@
+package operation;
+
+/**
+ * 64-bit string hash for the sketches: FNV-1a over the characters followed
+ * by the MurmurHash3 finalizer, so every output bit depends on every input
+ * character. String.hashCode has too few bits, and too little mixing, for
+ * HyperLogLog.
+ */
+final class SketchHash {
+    private SketchHash() {
+    }
+
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
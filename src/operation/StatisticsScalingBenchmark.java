@@ -0,0 +1,82 @@
+package operation;
+
+import model.Order;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Times the parallel statistics pass on 1, 2, 4 and so on up to maxThreads
+ * threads (by default the number of available processors), over generated
+ * orders held in a plain list and in a ColumnarOrderStore. Each time is the
+ * best of a number of runs after one warm-up run. Product categories come
+ * from data/products.txt, so run it from the application directory.
+ *
+ * Usage: java operation.StatisticsScalingBenchmark [orders] [runs] [maxThreads]
+ */
+public class StatisticsScalingBenchmark {
+    public static void main(String[] args) {
+        int orderCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        List<Order> orders = generateOrders(orderCount);
+        ProductOperation products = ProductOperation.getInstance();
+        OrderAggregator.OrderSource list = OrderAggregator.of(orders);
+        OrderAggregator.OrderSource columnar = ColumnarOrderStore.of(orders);
+
+        System.out.printf("%,d orders, best of %d runs%n", orderCount, runs);
+        System.out.printf("%8s %12s %8s %12s %8s%n", "threads", "list ms", "speedup", "columnar ms", "speedup");
+        double listSerial = 0;
+        double columnarSerial = 0;
+        for (int threads = 1; ; threads = Math.min(threads * 2, maxThreads)) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                double listMillis = time(list, products, pool, runs);
+                double columnarMillis = time(columnar, products, pool, runs);
+                if (threads == 1) {
+                    listSerial = listMillis;
+                    columnarSerial = columnarMillis;
+                }
+                System.out.printf("%8d %12.1f %7.2fx %12.1f %7.2fx%n", threads,
+                    listMillis, listSerial / listMillis, columnarMillis, columnarSerial / columnarMillis);
+            } finally {
+                pool.shutdown();
+            }
+            if (threads >= maxThreads) {
+                break;
+            }
+        }
+    }
+
+    private static List<Order> generateOrders(int count) {
+        Random random = new Random(42);
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        List<Order> orders = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Order order = new Order("o_" + (1_000_000_000L + i),
+                String.format("u_%010d", random.nextInt(10_000)),
+                String.format("p_%03d", random.nextInt(100) + 1),
+                random.nextInt(200_000) / 100.0);
+            order.setCreateTime(start.plusSeconds(random.nextInt(366 * 24 * 3600)));
+            orders.add(order);
+        }
+        return orders;
+    }
+
+    // Runs the pass once to warm up, then the given number of times; returns the best time in milliseconds
+    private static double time(OrderAggregator.OrderSource source, ProductOperation products,
+                               ForkJoinPool pool, int runs) {
+        OrderAggregator.aggregate(source, products, pool);
+        double best = Double.MAX_VALUE;
+        for (int run = 0; run < runs; run++) {
+            long start = System.nanoTime();
+            OrderStatistics statistics = OrderAggregator.aggregate(source, products, pool);
+            best = Math.min(best, (System.nanoTime() - start) / 1e6);
+            if (statistics.getOrderCount() != source.size()) {
+                throw new IllegalStateException("Aggregated " + statistics.getOrderCount()
+                    + " of " + source.size() + " orders");
+            }
+        }
+        return best;
+    }
+}
@@ -4,33 +4,39 @@ import model.User;
 import model.Customer;
 import model.Admin;
 
-import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
-import java.util.HashSet;
-import java.util.Set;
 import java.util.regex.Pattern;
 
 public class UserOperation {
     private static UserOperation instance;
     private static final String USERS_FILE = "data/users.txt";
+    private static final String USERS_LOG_FILE = "data/users.wal";
     private List<User> users;
-    private Set<String> usedUserIds;
+    // Username index; holds the first user in list order for each name
+    private final Map<String, User> usersByName = new ConcurrentHashMap<>();
+    private final UserStore store;
+    // Insertion sequence of each user in the user list; the key for cursor pagination
+    private final SequenceColumn userSequence = new SequenceColumn();
+    private int customerCount;
 
     private UserOperation() {
         users = new ArrayList<>();
-        usedUserIds = new HashSet<>();
+        store = new UserStore(USERS_FILE, USERS_LOG_FILE);
         loadUsers();
         
         // Create default admin if no users exist
         if (users.isEmpty()) {
-            Admin admin = new Admin("admin", "admin", "admin123");
+            Admin admin = new Admin(generateUserId(), "admin", "admin123");
             users.add(admin);
-            usedUserIds.add(admin.getId());
-            saveUsers();
+            userSequence.append();
+            usersByName.put(admin.getName(), admin);
+            store.writeSnapshot(users);
         }
+        Runtime.getRuntime().addShutdownHook(new Thread(store::close, "user-store-shutdown"));
     }
 
     /**
@@ -50,7 +56,7 @@ public class UserOperation {
      * @return true if exists, false otherwise
      */
     public boolean checkUsernameExist(String userName) {
-        return users.stream().anyMatch(u -> u.getName().equals(userName));
+        return userName != null && usersByName.containsKey(userName);
     }
 
     /**
@@ -94,46 +100,56 @@ public class UserOperation {
      * @return A User object (Customer or Admin) if successful, null otherwise
      */
     public User login(String username, String password) {
-        return users.stream()
-                .filter(u -> u.getName().equals(username) && u.getPassword().equals(password))
-                .findFirst()
-                .orElse(null);
+        User user = getUserByUsername(username);
+        return user != null && user.getPassword().equals(password) ? user : null;
     }
 
     private User getUserByUsername(String username) {
-        return users.stream()
-                .filter(u -> u.getName().equals(username))
-                .findFirst()
-                .orElse(null);
-    }
-
-    private String generateUserId() {
-        String userId;
-        do {
-            int number = ThreadLocalRandom.current().nextInt(1000000000, 2000000000);
-            userId = String.format("u_%010d", number);
-        } while (usedUserIds.contains(userId));
-        return userId;
+        return username == null ? null : usersByName.get(username);
     }
 
-    public boolean register(String username, String password, String email, String phoneNumber) {
-        // Check if username already exists
-        if (getUserByUsername(username) != null) {
+    /**
+     * Change a user's name and keep the username index current.
+     * The change still has to be persisted with {@link #updateUser(User)}.
+     * @param user The user to rename
+     * @param newName The new username
+     * @return true if renamed, false if the name is taken by another user
+     */
+    public synchronized boolean renameUser(User user, String newName) {
+        User owner = usersByName.putIfAbsent(newName, user);
+        if (owner != null && owner != user) {
             return false;
         }
+        if (!newName.equals(user.getName())) {
+            usersByName.remove(user.getName(), user);
+        }
+        user.setName(newName);
+        return true;
+    }
+
+    String generateUserId() {
+        return IdGenerator.getInstance().nextId(IdGenerator.USER_PREFIX);
+    }
 
+    public boolean register(String username, String password, String email, String phoneNumber) {
         // Generate user ID
         String userId = generateUserId();
 
         // Create new customer
         Customer customer = new Customer(userId, username, password, email, phoneNumber);
 
-        // Add to user list
-        users.add(customer);
-        usedUserIds.add(userId);
+        // Reserve the username; fails if it already exists
+        if (usersByName.putIfAbsent(username, customer) != null) {
+            return false;
+        }
 
-        // Save to file
-        return saveUsers();
+        // Log the new user before adding it to the list
+        if (!store.logAdd(customer)) {
+            usersByName.remove(username, customer);
+            return false;
+        }
+        appendUser(customer);
+        return true;
     }
 
     // This method is only used for displaying encrypted passwords
@@ -146,78 +162,141 @@ public class UserOperation {
     }
 
     public void addUser(User user) {
+        usersByName.putIfAbsent(user.getName(), user);
+        store.logAdd(user);
+        appendUser(user);
+    }
+
+    // Adds a logged user to the list; the list is only changed and read while holding this lock
+    private synchronized void appendUser(User user) {
         users.add(user);
-        usedUserIds.add(user.getId());
-        saveUsers();
+        userSequence.append();
+        if (user instanceof Customer) {
+            customerCount++;
+        }
+        snapshotIfNeeded();
     }
 
-    public List<Customer> getAllCustomers() {
+    /**
+     * Persist changes made to a user's attributes.
+     * @param user The user that was modified
+     * @return true if saved, false otherwise
+     */
+    public boolean updateUser(User user) {
+        if (!store.update(user)) {
+            return false;
+        }
+        snapshotIfNeeded();
+        return true;
+    }
+
+    /**
+     * Remove a user from the system.
+     * @param userId The ID of the user to delete
+     * @return true if deleted, false if not found or not saved
+     */
+    public synchronized boolean deleteUser(String userId) {
+        List<User> removedUsers = new ArrayList<>();
+        for (int i = users.size() - 1; i >= 0; i--) {
+            if (users.get(i).getId().equals(userId)) {
+                removedUsers.add(users.remove(i));
+                userSequence.remove(i);
+            }
+        }
+        if (removedUsers.isEmpty()) {
+            return false;
+        }
+        for (User removed : removedUsers) {
+            if (removed instanceof Customer) {
+                customerCount--;
+            }
+            if (usersByName.remove(removed.getName(), removed)) {
+                // Another user may share the name; it takes over the index entry
+                users.stream()
+                    .filter(u -> u.getName().equals(removed.getName()))
+                    .findFirst()
+                    .ifPresent(u -> usersByName.putIfAbsent(u.getName(), u));
+            }
+        }
+        boolean logged = store.logDelete(userId);
+        snapshotIfNeeded();
+        return logged;
+    }
+
+    public synchronized List<Customer> getAllCustomers() {
         return users.stream()
                 .filter(u -> u instanceof Customer)
                 .map(u -> (Customer) u)
                 .collect(Collectors.toList());
     }
 
-    public List<Admin> getAllAdmins() {
+    public synchronized List<Admin> getAllAdmins() {
         return users.stream()
                 .filter(u -> u instanceof Admin)
                 .map(u -> (Admin) u)
                 .collect(Collectors.toList());
     }
 
-    private boolean saveUsers() {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(USERS_FILE))) {
-            for (User user : users) {
-                if (user instanceof Customer) {
-                    Customer customer = (Customer) user;
-                    writer.println(String.format("%s,%s,%s,%s,%s,%s",
-                        user.getId(),
-                        user.getName(),
-                        user.getPassword(),
-                        user.getRole(),
-                        customer.getEmail(),
-                        customer.getPhoneNumber()));
-                } else {
-                    writer.println(String.format("%s,%s,%s,%s",
-                        user.getId(),
-                        user.getName(),
-                        user.getPassword(),
-                        user.getRole()));
-                }
+    /**
+     * Builds a page of customers in user list order, starting after a cursor.
+     * @param cursor Where the previous page ended, or null for the first page
+     * @param pageSize Number of customers per page
+     * @return The page and the cursor for the next one
+     */
+    synchronized CustomerListResult getCustomerPage(PageCursor cursor, int pageSize) {
+        int position = cursor == null ? 0 : userSequence.positionAfter(cursor.getLastSequence());
+        int pageNumber = cursor == null ? 1 : cursor.getNextPage();
+        List<Customer> page = new ArrayList<>(pageSize);
+        int last = -1;
+        // Only admins are skipped, so this reads about one page of users
+        for (int i = position; i < users.size() && page.size() < pageSize; i++) {
+            if (users.get(i) instanceof Customer) {
+                page.add((Customer) users.get(i));
+                last = i;
             }
-            return true;
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false;
+        }
+        return new CustomerListResult(page, pageNumber,
+            (int) Math.ceil((double) customerCount / pageSize), nextCustomerCursor(last, pageNumber));
+    }
+
+    /**
+     * @param customer A customer in the user list
+     * @param pageNumber Number of the page the customer is the last entry of
+     * @return A cursor for the page after it, or null if no customer follows
+     */
+    synchronized String getCustomerCursorAfter(Customer customer, int pageNumber) {
+        return nextCustomerCursor(users.indexOf(customer), pageNumber);
+    }
+
+    private String nextCustomerCursor(int lastPosition, int pageNumber) {
+        if (lastPosition < 0) {
+            return null;
+        }
+        for (int i = lastPosition + 1; i < users.size(); i++) {
+            if (users.get(i) instanceof Customer) {
+                return PageCursor.encode("customer", userSequence.get(lastPosition), pageNumber + 1);
+            }
+        }
+        return null;
+    }
+
+    private void snapshotIfNeeded() {
+        if (store.needsSnapshot(users.size())) {
+            store.snapshotAsync(new ArrayList<>(users));
         }
     }
 
     private void loadUsers() {
-        try (BufferedReader reader = new BufferedReader(new FileReader(USERS_FILE))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length >= 4) {
-                    User user;
-                    if (parts[3].equals("admin")) {
-                        user = new Admin(parts[0], parts[1], parts[2]);
-                    } else {
-                        // For customers, we need the email and phone fields
-                        if (parts.length >= 6) {
-                            user = new Customer(parts[0], parts[1], parts[2], parts[4], parts[5]);
-                        } else {
-                            // Skip invalid customer entries
-                            continue;
-                        }
-                    }
-                    users.add(user);
-                    usedUserIds.add(user.getId());
-                }
+        users = store.load();
+        usersByName.clear();
+        userSequence.clear();
+        customerCount = 0;
+        for (User user : users) {
+            usersByName.putIfAbsent(user.getName(), user);
+            userSequence.append();
+            if (user instanceof Customer) {
+                customerCount++;
             }
-        } catch (IOException e) {
-            // File might not exist yet, which is okay
-            users = new ArrayList<>();
-            usedUserIds = new HashSet<>();
         }
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,418 @@
+package operation;
+
+import model.Admin;
+import model.Customer;
+import model.User;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Snapshot plus write-ahead log persistence for users.
+ * data/users.txt holds a snapshot of every user and data/users.wal holds the
+ * mutations made since, one record each ("A" add, "U" update, "D" delete).
+ * A mutation only appends to the log. Once the log grows past a fraction of
+ * the user count a new snapshot is written on a background thread and the log
+ * it covers is truncated, so the cost of a mutation does not depend on how
+ * many users exist.
+ *
+ * Snapshot records are padded with spaces and the byte offset and length of
+ * every record is kept in an index, so an update to a user that is in the
+ * snapshot is written over its record in place. A record that outgrows its
+ * slot is relocated to the end of the file and the old slot is blanked.
+ * Every update is logged and forced to disk before users.txt is touched, so a
+ * write torn by a crash is redone on replay. Once the in-place write has been
+ * forced too and nothing else is pending in the log, the log is truncated.
+ */
+class UserStore {
+    private static final String ADD = "A";
+    private static final String UPDATE = "U";
+    private static final String DELETE = "D";
+    private static final int MIN_RECORDS_FOR_SNAPSHOT = 1000;
+    // Snapshot records are padded to a multiple of this many bytes, leaving room to grow
+    private static final int SLOT_ALIGNMENT = 32;
+    // ID every admin got from older versions; duplicates of it are distinct users
+    private static final String LEGACY_ADMIN_ID = "admin";
+
+    private final File snapshotFile;
+    private final File logFile;
+    // Log being folded into a snapshot; replayed after users.txt if a snapshot was interrupted
+    private final File rotatedLogFile;
+    private FileOutputStream logStream;
+    private BufferedWriter logWriter;
+    private int logRecords;
+    // Records in the current log that are not also in users.txt
+    private int pendingRecords;
+    private boolean snapshotting;
+    // Byte offset and slot length of each user's record in users.txt
+    private Map<String, long[]> recordIndex = new HashMap<>();
+    private RandomAccessFile snapshotAccess;
+    private final ExecutorService snapshotter = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "user-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    UserStore(String snapshotPath, String logPath) {
+        this.snapshotFile = new File(snapshotPath);
+        this.logFile = new File(logPath);
+        this.rotatedLogFile = new File(logPath + ".1");
+    }
+
+    /**
+     * Formats a user as a users.txt record.
+     * @param user The user
+     * @return The CSV record without a line terminator
+     */
+    static String format(User user) {
+        if (user instanceof Customer) {
+            Customer customer = (Customer) user;
+            return String.format("%s,%s,%s,%s,%s,%s",
+                user.getId(),
+                user.getName(),
+                user.getPassword(),
+                user.getRole(),
+                customer.getEmail(),
+                customer.getPhoneNumber());
+        }
+        return String.format("%s,%s,%s,%s",
+            user.getId(),
+            user.getName(),
+            user.getPassword(),
+            user.getRole());
+    }
+
+    /**
+     * Loads the snapshot and replays the log on top of it.
+     * @return The users in the order they were first added
+     */
+    synchronized List<User> load() {
+        Map<String, User> users = new LinkedHashMap<>();
+        List<User> renumbered = new ArrayList<>();
+        recordIndex = readSnapshot(users, renumbered);
+        logRecords = replayLog(rotatedLogFile, users) + replayLog(logFile, users);
+        pendingRecords = logRecords;
+        if (!renumbered.isEmpty()) {
+            // Persist the new IDs right away so the next load sees the same users
+            for (User user : renumbered) {
+                System.err.println("Duplicate user ID in " + snapshotFile + ": " + user.getName()
+                    + " is now " + user.getId());
+            }
+            writeSnapshot(new ArrayList<>(users.values()));
+        }
+        return new ArrayList<>(users.values());
+    }
+
+    synchronized boolean logAdd(User user) {
+        return appendLog(ADD + "," + format(user), false);
+    }
+
+    /**
+     * Persists a changed user through the log, and also in place in users.txt
+     * when the user has a record there.
+     * @param user The changed user
+     * @return true if saved
+     */
+    synchronized boolean update(User user) {
+        long[] slot = recordIndex.get(user.getId());
+        boolean inPlace = slot != null && !snapshotting;
+        // The log record must be on disk before users.txt is touched
+        if (!appendLog(UPDATE + "," + format(user), inPlace)) {
+            return false;
+        }
+        if (inPlace) {
+            try {
+                writeInPlace(user, slot);
+                pendingRecords--;
+                // A log left by a failed snapshot is replayed first and must not outlive this one
+                if (pendingRecords == 0 && !rotatedLogFile.exists()) {
+                    truncateLog();
+                }
+            } catch (IOException e) {
+                // The log record is enough to recover the update
+                e.printStackTrace();
+                closeSnapshotAccess();
+            }
+        }
+        return true;
+    }
+
+    synchronized boolean logDelete(String userId) {
+        recordIndex.remove(userId);
+        return appendLog(DELETE + "," + userId, false);
+    }
+
+    /**
+     * Checks whether the log has grown enough to be worth folding into a snapshot.
+     * @param userCount Number of live users
+     * @return true if a snapshot should be started
+     */
+    synchronized boolean needsSnapshot(int userCount) {
+        return !snapshotting && logRecords >= Math.max(MIN_RECORDS_FOR_SNAPSHOT, userCount / 2);
+    }
+
+    /**
+     * Writes a snapshot synchronously and truncates the log. Used when the
+     * users file is created for the first time.
+     * @param users Every live user
+     * @return true if the snapshot was written
+     */
+    synchronized boolean writeSnapshot(List<User> users) {
+        if (!rotateLog()) {
+            return false;
+        }
+        return snapshot(users);
+    }
+
+    /**
+     * Starts writing a snapshot in the background. Mutations logged from now
+     * on go to a fresh log, which is kept when the snapshot completes.
+     * @param users Copy of every live user at this point
+     */
+    synchronized void snapshotAsync(List<User> users) {
+        if (snapshotting || !rotateLog()) {
+            return;
+        }
+        snapshotting = true;
+        snapshotter.submit(() -> {
+            snapshot(users);
+            synchronized (this) {
+                snapshotting = false;
+            }
+        });
+    }
+
+    /**
+     * Flushes and closes the log and the snapshot file.
+     */
+    synchronized void close() {
+        closeLog();
+        closeSnapshotAccess();
+    }
+
+    // Writes the snapshot without holding the lock, then swaps it in together with its index
+    private boolean snapshot(List<User> users) {
+        File tempFile = new File(snapshotFile.getPath() + ".tmp");
+        Map<String, long[]> newIndex = new HashMap<>();
+        try {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile))) {
+                long offset = 0;
+                for (User user : users) {
+                    byte[] record = padded(user, 0);
+                    out.write(record);
+                    out.write('\n');
+                    newIndex.put(user.getId(), new long[] {offset, record.length});
+                    offset += record.length + 1;
+                }
+            }
+            synchronized (this) {
+                closeSnapshotAccess();
+                Files.move(tempFile.toPath(), snapshotFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                recordIndex = newIndex;
+            }
+            Files.deleteIfExists(rotatedLogFile.toPath());
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private void writeInPlace(User user, long[] slot) throws IOException {
+        if (snapshotAccess == null) {
+            snapshotAccess = new RandomAccessFile(snapshotFile, "rw");
+        }
+        byte[] record = padded(user, (int) slot[1]);
+        if (record.length == slot[1]) {
+            snapshotAccess.seek(slot[0]);
+            snapshotAccess.write(record);
+            snapshotAccess.getChannel().force(false);
+            return;
+        }
+        // Relocate: append the record at the end of the file, then blank the old slot
+        long offset = snapshotAccess.length();
+        if (offset > 0) {
+            snapshotAccess.seek(offset - 1);
+            if (snapshotAccess.read() != '\n') {
+                // The last line was written without a terminator
+                snapshotAccess.write('\n');
+                offset++;
+            }
+        }
+        snapshotAccess.seek(offset);
+        snapshotAccess.write(record);
+        snapshotAccess.write('\n');
+        byte[] blank = new byte[(int) slot[1]];
+        Arrays.fill(blank, (byte) ' ');
+        snapshotAccess.seek(slot[0]);
+        snapshotAccess.write(blank);
+        snapshotAccess.getChannel().force(false);
+        recordIndex.put(user.getId(), new long[] {offset, record.length});
+    }
+
+    // Encodes a record padded with spaces to the given slot length, or to a new
+    // aligned length with room to grow if the record does not fit
+    private static byte[] padded(User user, int slotLength) {
+        byte[] bytes = format(user).getBytes(StandardCharsets.UTF_8);
+        int length = bytes.length <= slotLength
+            ? slotLength
+            : (bytes.length / SLOT_ALIGNMENT + 1) * SLOT_ALIGNMENT;
+        byte[] record = Arrays.copyOf(bytes, length);
+        Arrays.fill(record, bytes.length, length, (byte) ' ');
+        return record;
+    }
+
+    private void closeSnapshotAccess() {
+        if (snapshotAccess != null) {
+            try {
+                snapshotAccess.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            snapshotAccess = null;
+        }
+    }
+
+    // Moves the current log aside so the snapshot being written replaces it
+    private boolean rotateLog() {
+        closeLog();
+        try {
+            if (logFile.exists()) {
+                if (rotatedLogFile.exists()) {
+                    // A previous snapshot failed; keep its records ahead of ours
+                    try (Writer out = new FileWriter(rotatedLogFile, StandardCharsets.UTF_8, true);
+                         Reader in = new FileReader(logFile, StandardCharsets.UTF_8)) {
+                        in.transferTo(out);
+                    }
+                    Files.delete(logFile.toPath());
+                } else {
+                    Files.move(logFile.toPath(), rotatedLogFile.toPath());
+                }
+            }
+            logRecords = 0;
+            pendingRecords = 0;
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // Appends a record to the log, forcing it to disk if asked
+    private boolean appendLog(String record, boolean force) {
+        try {
+            if (logWriter == null) {
+                logStream = new FileOutputStream(logFile, true);
+                logWriter = new BufferedWriter(new OutputStreamWriter(logStream, StandardCharsets.UTF_8));
+            }
+            logWriter.write(record);
+            logWriter.newLine();
+            logWriter.flush();
+            if (force) {
+                logStream.getChannel().force(false);
+            }
+            logRecords++;
+            pendingRecords++;
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            closeLog();
+            return false;
+        }
+    }
+
+    // Empties the log once users.txt holds everything in it
+    private void truncateLog() {
+        try {
+            logStream.getChannel().truncate(0);
+            logStream.getChannel().force(false);
+            logRecords = 0;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void closeLog() {
+        if (logWriter != null) {
+            try {
+                logWriter.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            logWriter = null;
+            logStream = null;
+        }
+    }
+
+    // A row whose ID was already read is a newer copy of the same user left by a
+    // relocation that was cut short, and replaces the earlier row. The exception is
+    // the ID "admin", which older versions gave every admin: a row for another admin
+    // under that ID keeps its data but gets a fresh ID, and is added to renumbered
+    private Map<String, long[]> readSnapshot(Map<String, User> users, List<User> renumbered) {
+        Map<String, long[]> index = new HashMap<>();
+        try (Reader in = new FileReader(snapshotFile, StandardCharsets.UTF_8)) {
+            CsvRecordReader reader = new CsvRecordReader(in);
+            reader.stripPadding();
+            reader.trackByteOffsets();
+            while (reader.next()) {
+                User user = parseUser(reader, 0);
+                if (user != null) {
+                    User earlier = users.get(user.getId());
+                    if (earlier != null && user.getId().equals(LEGACY_ADMIN_ID)
+                            && !earlier.getName().equals(user.getName())) {
+                        user.setId(IdGenerator.getInstance().nextId(IdGenerator.USER_PREFIX));
+                        renumbered.add(user);
+                    }
+                    users.put(user.getId(), user);
+                    index.put(user.getId(), new long[] {reader.lineByteOffset(), reader.lineByteLength()});
+                }
+            }
+        } catch (IOException e) {
+            // File might not exist yet, which is okay
+        }
+        return index;
+    }
+
+    private int replayLog(File file, Map<String, User> users) {
+        int records = 0;
+        try (Reader in = new FileReader(file, StandardCharsets.UTF_8)) {
+            CsvRecordReader reader = new CsvRecordReader(in);
+            while (reader.next()) {
+                records++;
+                if (reader.fieldEquals(0, DELETE) && reader.fieldCount() >= 2) {
+                    users.remove(reader.field(1));
+                    recordIndex.remove(reader.field(1));
+                } else if (reader.fieldEquals(0, ADD) || reader.fieldEquals(0, UPDATE)) {
+                    User user = parseUser(reader, 1);
+                    if (user != null) {
+                        users.put(user.getId(), user);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // No log yet
+        }
+        return records;
+    }
+
+    // Parses a user whose fields start at the given index of the current record
+    private static User parseUser(CsvRecordReader reader, int first) {
+        int fields = reader.fieldCount() - first;
+        if (fields < 4) {
+            return null;
+        }
+        if (reader.fieldEquals(first + 3, "admin")) {
+            return new Admin(reader.field(first), reader.field(first + 1), reader.field(first + 2));
+        }
+        // For customers, we need the email and phone fields
+        if (fields < 6) {
+            return null;
+        }
+        return new Customer(reader.field(first), reader.field(first + 1), reader.field(first + 2),
+            reader.field(first + 4), reader.field(first + 5));
+    }
+}